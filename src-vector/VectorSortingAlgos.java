@@ -0,0 +1,421 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * SIMD versions of introSort and mergeSort for int[], written against the jdk.incubator.vector module.
+ *
+ * It lives in its own source root so that src compiles without the incubator module. Build it after src,
+ * with src's classes on the class path:
+ *   javac --add-modules jdk.incubator.vector -cp out -d out src-vector/*.java
+ * and run with --add-modules jdk.incubator.vector. Don't call it directly: SortingAlgos.vectorizedIntroSort and
+ * SortingAlgos.vectorizedMergeSort look it up reflectively and fall back to the scalar sorts when either the
+ * class or the module isn't there. The results are the same either way.
+ *
+ * Vectors are at most 256 bits (8 ints) wide. The partition packs each vector with a shuffle looked up from a
+ * table indexed by the comparison mask, and that table has 2^lanes entries, which is only small enough
+ * up to 8 lanes. On AVX-512 machines this still runs on 256-bit vectors.
+ *
+ * The building blocks are:
+ * - bitonic sorting networks that sort a whole vector in registers, used for ranges of up to 2 vectors
+ * - an in-place partition that handles a vector of elements per step
+ * - a merge of two sorted ranges that emits a vector of elements per step through a bitonic merge network
+ */
+class VectorSortingAlgos {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256
+            ? IntVector.SPECIES_256
+            : IntVector.SPECIES_128;
+
+    private static final int LANES = SPECIES.length();
+
+    /*
+     * Ranges of up to this many elements are sorted with the sorting networks
+     */
+    private static final int BLOCK_SIZE = 2 * LANES;
+
+    // Reverses the lanes of a vector
+    private static final VectorShuffle<Integer> REVERSE;
+
+    /*
+     * The bitonic sort of a single vector runs one compare-exchange step per (k, j) pair, k = 2, 4, ..., LANES
+     * and j = k / 2, ..., 1. Step s pairs lane i with lane i ^ j, and the lanes in SORT_TAKES_MAX[s] keep the max
+     * of the pair while the others keep the min
+     */
+    private static final VectorShuffle<Integer>[] SORT_PARTNERS;
+    private static final VectorMask<Integer>[] SORT_TAKES_MAX;
+
+    /*
+     * The bitonic merge of a vector runs one step per j = LANES / 2, ..., 1, always in ascending order
+     */
+    private static final VectorShuffle<Integer>[] MERGE_PARTNERS;
+    private static final VectorMask<Integer>[] MERGE_TAKES_MAX;
+
+    /*
+     * PARTITION_SHUFFLES[mask] moves the lanes set in mask to the front of the vector and the rest to the back
+     */
+    private static final VectorShuffle<Integer>[] PARTITION_SHUFFLES;
+
+    static {
+        var reversed = new int[LANES];
+        for (int i = 0; i < LANES; i++)
+            reversed[i] = LANES - 1 - i;
+        REVERSE = VectorShuffle.fromArray(SPECIES, reversed, 0);
+
+        int log2Lanes = Integer.numberOfTrailingZeros(LANES);
+        int sortSteps = log2Lanes * (log2Lanes + 1) / 2;
+
+        @SuppressWarnings("unchecked")
+        var sortPartners = (VectorShuffle<Integer>[]) new VectorShuffle<?>[sortSteps];
+        @SuppressWarnings("unchecked")
+        var sortTakesMax = (VectorMask<Integer>[]) new VectorMask<?>[sortSteps];
+
+        int step = 0;
+        for (int k = 2; k <= LANES; k *= 2) {
+            for (int j = k / 2; j >= 1; j /= 2) {
+                var partners = new int[LANES];
+                var takesMax = new boolean[LANES];
+                for (int i = 0; i < LANES; i++) {
+                    partners[i] = i ^ j;
+                    boolean ascending = (i & k) == 0;
+                    boolean lowerLane = (i & j) == 0;
+                    takesMax[i] = lowerLane != ascending;
+                }
+                sortPartners[step] = VectorShuffle.fromArray(SPECIES, partners, 0);
+                sortTakesMax[step] = VectorMask.fromArray(SPECIES, takesMax, 0);
+                step++;
+            }
+        }
+        SORT_PARTNERS = sortPartners;
+        SORT_TAKES_MAX = sortTakesMax;
+
+        @SuppressWarnings("unchecked")
+        var mergePartners = (VectorShuffle<Integer>[]) new VectorShuffle<?>[log2Lanes];
+        @SuppressWarnings("unchecked")
+        var mergeTakesMax = (VectorMask<Integer>[]) new VectorMask<?>[log2Lanes];
+
+        step = 0;
+        for (int j = LANES / 2; j >= 1; j /= 2) {
+            var partners = new int[LANES];
+            var takesMax = new boolean[LANES];
+            for (int i = 0; i < LANES; i++) {
+                partners[i] = i ^ j;
+                takesMax[i] = (i & j) != 0;
+            }
+            mergePartners[step] = VectorShuffle.fromArray(SPECIES, partners, 0);
+            mergeTakesMax[step] = VectorMask.fromArray(SPECIES, takesMax, 0);
+            step++;
+        }
+        MERGE_PARTNERS = mergePartners;
+        MERGE_TAKES_MAX = mergeTakesMax;
+
+        @SuppressWarnings("unchecked")
+        var partitionShuffles = (VectorShuffle<Integer>[]) new VectorShuffle<?>[1 << LANES];
+        for (int mask = 0; mask < partitionShuffles.length; mask++) {
+            var order = new int[LANES];
+            int front = 0;
+            for (int i = 0; i < LANES; i++) {
+                if ((mask & (1 << i)) != 0)
+                    order[front++] = i;
+            }
+            for (int i = 0; i < LANES; i++) {
+                if ((mask & (1 << i)) == 0)
+                    order[front++] = i;
+            }
+            partitionShuffles[mask] = VectorShuffle.fromArray(SPECIES, order, 0);
+        }
+        PARTITION_SHUFFLES = partitionShuffles;
+    }
+
+    /*
+     * introSort with the partitioning and the small ranges done with vectors
+     */
+    static void introSort(int[] data) {
+        if (data.length < 2) return;
+
+        introSort(data, 0, data.length, 2 * (31 - Integer.numberOfLeadingZeros(data.length)), new int[2 * LANES]);
+    }
+
+    /*
+     * Bottom-up mergeSort: blocks of BLOCK_SIZE elements are sorted with the sorting networks, then merged
+     * pairwise with vectorMerge, bouncing between data and tmp.
+     * This isn't an in-place implementation
+     */
+    static void mergeSort(int[] data) {
+        int n = data.length;
+        if (n < 2) return;
+
+        for (int start = 0; start < n; start += BLOCK_SIZE)
+            sortBlock(data, start, Math.min(start + BLOCK_SIZE, n));
+
+        var src = data;
+        var dest = new int[n];
+        var carry = new int[LANES];
+
+        for (int width = BLOCK_SIZE; width < n; width *= 2) {
+            for (int start = 0; start < n; start += 2 * width) {
+                int mid = Math.min(start + width, n);
+                int end = Math.min(start + 2 * width, n);
+                vectorMerge(src, start, mid, mid, end, dest, start, carry);
+            }
+
+            var dummy = src;
+            src = dest;
+            dest = dummy;
+        }
+
+        if (src != data)
+            System.arraycopy(src, 0, data, 0, n);
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * end is exclusive. scratch holds 2 vectors' worth of ints for vectorPartition
+     */
+    private static void introSort(int[] data, int start, int end, int depthLimit, int[] scratch) {
+        while (end - start > BLOCK_SIZE) {
+            if (depthLimit == 0) {
+                SortingAlgos.heapSort(data, start, end);
+                return;
+            }
+            depthLimit--;
+
+            int pivotIdx = end - start >= SortingAlgos.NINTHER_THRESHOLD
+                    ? SortingAlgos.ninther(data, start, end)
+                    : SortingAlgos.medianOf3(data, start, (start + end) >>> 1, end - 1);
+            int pivotVal = data[pivotIdx];
+
+            int divisionIdx = vectorPartition(data, start, end, pivotVal, false, scratch);
+
+            // The pivot is the minimum of the range. Every element equal to it is in its final place
+            // once they're all moved to the front
+            if (divisionIdx == start) {
+                start = vectorPartition(data, start, end, pivotVal, true, scratch);
+                continue;
+            }
+
+            if (divisionIdx - start < end - divisionIdx) {
+                introSort(data, start, divisionIdx, depthLimit, scratch);
+                start = divisionIdx;
+            }
+            else {
+                introSort(data, divisionIdx, end, depthLimit, scratch);
+                end = divisionIdx;
+            }
+        }
+
+        sortBlock(data, start, end);
+    }
+
+    /*
+     * Partitions data[start, end) so the elements < pivotVal (<= pivotVal if inclusive) come first.
+     * Returns the index of the first element that isn't.
+     *
+     * The first and last vector of the range are set aside, which leaves a vector's worth of free space at both ends.
+     * Every step loads a vector from the side with less free space, packs it with a shuffle so the lanes
+     * that go left come first, and stores it in full at both write positions. Only the lanes that belong
+     * on each side advance its write position, the rest get overwritten later.
+     * The leftover tail and the 2 vectors set aside are placed one by one at the end
+     */
+    private static int vectorPartition(int[] data, int start, int end, int pivotVal, boolean inclusive,
+            int[] scratch) {
+        if (end - start < 2 * LANES)
+            return scalarPartition(data, start, end, pivotVal, inclusive);
+
+        // The operator has to be a constant at the call to compare for it to compile down to a vector instruction
+        var pivot = IntVector.broadcast(SPECIES, pivotVal);
+
+        IntVector.fromArray(SPECIES, data, start).intoArray(scratch, 0);
+        IntVector.fromArray(SPECIES, data, end - LANES).intoArray(scratch, LANES);
+
+        int readLeft = start + LANES;
+        int readRight = end - LANES;
+        int writeLeft = start;
+        int writeRight = end;
+
+        while (readRight - readLeft >= LANES) {
+            IntVector v;
+            if (readLeft - writeLeft <= writeRight - readRight) {
+                v = IntVector.fromArray(SPECIES, data, readLeft);
+                readLeft += LANES;
+            }
+            else {
+                readRight -= LANES;
+                v = IntVector.fromArray(SPECIES, data, readRight);
+            }
+
+            var goesLeft = inclusive ? v.compare(VectorOperators.LE, pivot) : v.compare(VectorOperators.LT, pivot);
+            int leftCount = goesLeft.trueCount();
+            var packed = v.rearrange(PARTITION_SHUFFLES[(int) goesLeft.toLong()]);
+
+            packed.intoArray(data, writeLeft);
+            packed.intoArray(data, writeRight - LANES);
+            writeLeft += leftCount;
+            writeRight -= LANES - leftCount;
+        }
+
+        // Reading from the side with less free space, like above, leaves a free slot for the element on either side
+        while (readLeft < readRight) {
+            int e = readLeft - writeLeft <= writeRight - readRight ? data[readLeft++] : data[--readRight];
+            if (e < pivotVal || (inclusive && e == pivotVal))
+                data[writeLeft++] = e;
+            else
+                data[--writeRight] = e;
+        }
+
+        for (int i = 0; i < 2 * LANES; i++) {
+            int e = scratch[i];
+            if (e < pivotVal || (inclusive && e == pivotVal))
+                data[writeLeft++] = e;
+            else
+                data[--writeRight] = e;
+        }
+
+        return writeLeft;
+    }
+
+    /*
+     * The same partition as vectorPartition, for ranges too small to set 2 vectors aside
+     */
+    private static int scalarPartition(int[] data, int start, int end, int pivotVal, boolean inclusive) {
+        int writeLeft = start;
+        for (int i = start; i < end; i++) {
+            int e = data[i];
+            if (e < pivotVal || (inclusive && e == pivotVal)) {
+                SortingAlgos.swap(data, i, writeLeft);
+                writeLeft++;
+            }
+        }
+        return writeLeft;
+    }
+
+    /*
+     * Sorts data[start, end) where end - start <= BLOCK_SIZE.
+     * The range is loaded into 2 vectors padded with Integer.MAX_VALUE, which sort after every real element,
+     * so the first end - start lanes of the sorted vectors are exactly the sorted range
+     */
+    private static void sortBlock(int[] data, int start, int end) {
+        if (end - start < 2) return;
+
+        var padding = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+
+        var lowMask = SPECIES.indexInRange(start, end);
+        var highMask = SPECIES.indexInRange(start + LANES, end);
+
+        var low = padding.blend(IntVector.fromArray(SPECIES, data, start, lowMask), lowMask);
+        var high = padding.blend(IntVector.fromArray(SPECIES, data, start + LANES, highMask), highMask);
+
+        low = sortVector(low);
+        if (highMask.anyTrue()) {
+            high = sortVector(high);
+
+            // Reversing high makes low ++ high bitonic
+            high = high.rearrange(REVERSE);
+            var min = low.min(high);
+            var max = low.max(high);
+            low = mergeBitonic(min);
+            high = mergeBitonic(max);
+        }
+
+        low.intoArray(data, start, lowMask);
+        high.intoArray(data, start + LANES, highMask);
+    }
+
+    /*
+     * Sorts the lanes of v with a bitonic sorting network
+     */
+    private static IntVector sortVector(IntVector v) {
+        for (int step = 0; step < SORT_PARTNERS.length; step++) {
+            var partner = v.rearrange(SORT_PARTNERS[step]);
+            v = v.min(partner).blend(v.max(partner), SORT_TAKES_MAX[step]);
+        }
+        return v;
+    }
+
+    /*
+     * Sorts the lanes of a bitonic vector (ascending then descending, or the other way around)
+     */
+    private static IntVector mergeBitonic(IntVector v) {
+        for (int step = 0; step < MERGE_PARTNERS.length; step++) {
+            var partner = v.rearrange(MERGE_PARTNERS[step]);
+            v = v.min(partner).blend(v.max(partner), MERGE_TAKES_MAX[step]);
+        }
+        return v;
+    }
+
+    /*
+     * Merges the sorted ranges src[leftStart, leftEnd) and src[rightStart, rightEnd) into dest starting at destStart.
+     *
+     * A carry vector holds the largest LANES elements merged so far. Every step loads the next vector from
+     * the range with the smaller next element and runs the carry and that vector through a bitonic merge:
+     * the lower half is final and gets stored, the upper half becomes the new carry.
+     * Once a range runs out of whole vectors, the carry and the leftovers are merged one by one.
+     * carry is a scratch array of LANES ints
+     */
+    private static void vectorMerge(int[] src, int leftStart, int leftEnd, int rightStart, int rightEnd,
+            int[] dest, int destStart, int[] carry) {
+        if (leftEnd - leftStart < LANES || rightEnd - rightStart < LANES) {
+            SortingAlgos.sequentialMerge(src, leftStart, leftEnd, rightStart, rightEnd, dest, destStart);
+            return;
+        }
+
+        // The two ranges are already in order
+        if (src[leftEnd - 1] <= src[rightStart]) {
+            System.arraycopy(src, leftStart, dest, destStart, leftEnd - leftStart);
+            System.arraycopy(src, rightStart, dest, destStart + (leftEnd - leftStart), rightEnd - rightStart);
+            return;
+        }
+
+        int left = leftStart + LANES;
+        int right = rightStart;
+        int destIdx = destStart;
+
+        var high = IntVector.fromArray(SPECIES, src, leftStart);
+
+        // Stops as soon as either range has less than a whole vector left: loading only from the other range
+        // from then on could push its elements out ahead of smaller leftovers
+        while (left + LANES <= leftEnd && right + LANES <= rightEnd) {
+            IntVector next;
+            if (src[right] < src[left]) {
+                next = IntVector.fromArray(SPECIES, src, right);
+                right += LANES;
+            }
+            else {
+                next = IntVector.fromArray(SPECIES, src, left);
+                left += LANES;
+            }
+
+            next = next.rearrange(REVERSE);
+            var low = mergeBitonic(high.min(next));
+            high = mergeBitonic(high.max(next));
+
+            low.intoArray(dest, destIdx);
+            destIdx += LANES;
+        }
+
+        // 3-way merge of the carry with what's left of both ranges
+        high.intoArray(carry, 0);
+        int c = 0;
+        while (c < LANES && (left < leftEnd || right < rightEnd)) {
+            if (right == rightEnd || (left < leftEnd && src[left] < src[right])) {
+                if (carry[c] <= src[left])
+                    dest[destIdx++] = carry[c++];
+                else
+                    dest[destIdx++] = src[left++];
+            }
+            else {
+                if (carry[c] <= src[right])
+                    dest[destIdx++] = carry[c++];
+                else
+                    dest[destIdx++] = src[right++];
+            }
+        }
+
+        // At most one of these 3 is left with anything, or the carry is done and 2 plain ranges are left
+        System.arraycopy(carry, c, dest, destIdx, LANES - c);
+        destIdx += LANES - c;
+        SortingAlgos.sequentialMerge(src, left, leftEnd, right, rightEnd, dest, destIdx);
+    }
+}
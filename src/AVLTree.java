@@ -0,0 +1,962 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/*
+ * An AVL tree of float keys (a sorted set: adding a key that's already there does nothing).
+ *
+ * Unlike AVLTreeNode, the nodes aren't objects. They live in parallel arrays indexed by node: keys, left, right
+ * and height, about 13 bytes per key instead of a ~40 byte object each. Removed nodes are recycled through
+ * a free list. Rotations re-link nodes instead of swapping values.
+ *
+ * insert, find and remove are iterative. There are no parent links: insert and remove record the path they
+ * walk down in a small array, then walk it back up, updating heights and rotating where a node is out of
+ * balance. They stop as soon as a subtree's height is unchanged, since nothing above it can change then.
+ *
+ * cursor() iterates the keys in order (or a range of them, or in descending order) with an explicit stack,
+ * and stream() gives a DoubleStream whose spliterator splits at subtree boundaries. Neither allocates per key.
+ *
+ * fromSorted builds a tree from sorted keys in O(n). union, intersection and difference are join-based:
+ * they split one tree around the other's root, recurse on both halves (in parallel on a ForkJoinPool) and join
+ * the results back together, which is O(m log(n/m + 1)) work for trees of sizes m <= n. The other tree's nodes
+ * have to be copied into this tree's arrays first, which keeps within that bound only while the other tree is
+ * the smaller one. When it's bigger, intersection and difference instead look up each of this tree's m keys in
+ * it, sequentially, in O(m log n), and union has to copy it all, O(n), since every one of its keys ends up in
+ * this tree. Nodes they drop are left in the arrays and reclaimed in one sweep the next time the arrays would
+ * otherwise have to grow. split(key) also splits in O(log n), but then has
+ * to copy the smaller side into a tree of its own, so it costs time proportional to that side.
+ *
+ * Keys are ordered like Float.compare, so -0.0 < 0.0 and NaN is larger than everything. It isn't thread-safe.
+ */
+public class AVLTree {
+    static final int NONE = -1;
+
+    // An AVL tree of n nodes is at most ~1.44 log2(n) high, so this covers any tree that fits in the arrays
+    private static final int MAX_HEIGHT = 64;
+
+    float[] keys;
+    int[] left;
+    int[] right;
+
+    // The number of nodes on the longest path down from a node, so a leaf has height 1
+    byte[] height;
+
+    int root = NONE;
+    private int size = 0;
+    private int nodesUsed = 0;
+
+    // Removed nodes waiting to be reused, chained through left
+    private int freeNode = NONE;
+
+    private final int[] path = new int[MAX_HEIGHT];
+
+    // Set operations on subtrees this high or lower run sequentially
+    private static final int SEQUENTIAL_HEIGHT = 10;
+
+    public AVLTree() {
+        this(16);
+    }
+
+    public AVLTree(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 2);
+        keys = new float[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+    }
+
+    /*
+     * Adds key. Returns false if it was already in the tree
+     */
+    public boolean insert(float key) {
+        int depth = 0;
+        int node = root;
+        int cmp = 0;
+        while (node != NONE) {
+            cmp = Float.compare(key, keys[node]);
+            if (cmp == 0) return false;
+
+            path[depth++] = node;
+            node = cmp < 0 ? left[node] : right[node];
+        }
+
+        int newNode = allocate(key);
+        if (depth == 0)
+            root = newNode;
+        else if (cmp < 0)
+            left[path[depth - 1]] = newNode;
+        else
+            right[path[depth - 1]] = newNode;
+
+        size++;
+        rebalancePath(depth);
+        return true;
+    }
+
+    /*
+     * Builds a perfectly balanced tree out of sorted (ascending, in Float.compare order) keys in O(n).
+     * Repeated keys are only added once
+     */
+    public static AVLTree fromSorted(float[] sorted) {
+        var tree = new AVLTree(sorted.length);
+
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0) {
+                int cmp = Float.compare(sorted[i - 1], sorted[i]);
+                if (cmp > 0)
+                    throw new IllegalArgumentException("The keys aren't sorted at index " + i);
+                if (cmp == 0) continue;
+            }
+            tree.allocate(sorted[i]);
+        }
+
+        // The distinct keys now sit in nodes 0 to nodesUsed - 1, in order
+        tree.size = tree.nodesUsed;
+        tree.root = tree.buildBalanced(0, tree.nodesUsed - 1);
+        return tree;
+    }
+
+    /*
+     * Adds every key of other to this tree. other isn't modified
+     */
+    public void union(AVLTree other) {
+        union(other, ForkJoinPool.commonPool());
+    }
+
+    public void union(AVLTree other, ForkJoinPool pool) {
+        runSetOperation(SetOperation.UNION, other, pool);
+    }
+
+    /*
+     * Removes the keys of this tree that aren't in other. other isn't modified
+     */
+    public void intersection(AVLTree other) {
+        intersection(other, ForkJoinPool.commonPool());
+    }
+
+    public void intersection(AVLTree other, ForkJoinPool pool) {
+        runSetOperation(SetOperation.INTERSECTION, other, pool);
+    }
+
+    /*
+     * Removes the keys of this tree that are in other. other isn't modified
+     */
+    public void difference(AVLTree other) {
+        difference(other, ForkJoinPool.commonPool());
+    }
+
+    public void difference(AVLTree other, ForkJoinPool pool) {
+        runSetOperation(SetOperation.DIFFERENCE, other, pool);
+    }
+
+    /*
+     * Moves the keys >= key out of this tree into a new tree, which is returned. this tree keeps the keys < key.
+     *
+     * This isn't a logarithmic operation. Splitting the tree itself is O(log n), but the two trees can't share
+     * arrays, so whichever side looks smaller (going by height) is then counted and copied into fresh arrays,
+     * while the other one keeps this tree's arrays. That makes split O(log n + k) time and memory, where k is the
+     * size of the copied side, up to O(n) when key falls near the middle
+     */
+    public AVLTree split(float key) {
+        int found = find(key);
+
+        long parts = split(root, key);
+        int lower = leftPart(parts);
+        int upper = rightPart(parts);
+        if (found != NONE) {
+            // split drops the node holding key, but it belongs to the upper part
+            left[found] = NONE;
+            right[found] = NONE;
+            height[found] = 1;
+            upper = join(NONE, found, upper);
+        }
+
+        var upperTree = new AVLTree();
+        if (heightOf(lower) <= heightOf(upper)) {
+            int lowerSize = countNodes(lower);
+            var lowerTree = new AVLTree(lowerSize);
+            lowerTree.root = lowerTree.copySubtree(this, lower);
+            lowerTree.size = lowerSize;
+
+            upperTree.takeArrays(this);
+            upperTree.root = upper;
+            upperTree.size = size - lowerSize;
+            takeArrays(lowerTree);
+            root = lowerTree.root;
+            size = lowerSize;
+        }
+        else {
+            int upperSize = countNodes(upper);
+            upperTree = new AVLTree(upperSize);
+            upperTree.root = upperTree.copySubtree(this, upper);
+            upperTree.size = upperSize;
+
+            root = lower;
+            size -= upperSize;
+        }
+
+        return upperTree;
+    }
+
+    public boolean contains(float key) {
+        return find(key) != NONE;
+    }
+
+    /*
+     * Removes key. Returns false if it wasn't in the tree
+     */
+    public boolean remove(float key) {
+        int depth = 0;
+        int node = root;
+        while (node != NONE) {
+            int cmp = Float.compare(key, keys[node]);
+            if (cmp == 0) break;
+
+            path[depth++] = node;
+            node = cmp < 0 ? left[node] : right[node];
+        }
+        if (node == NONE) return false;
+
+        // A node with two children takes its successor's key, and the successor is removed instead
+        if (left[node] != NONE && right[node] != NONE) {
+            path[depth++] = node;
+            int successor = right[node];
+            while (left[successor] != NONE) {
+                path[depth++] = successor;
+                successor = left[successor];
+            }
+
+            keys[node] = keys[successor];
+            node = successor;
+        }
+
+        // node has at most one child now, which takes its place
+        int child = left[node] != NONE ? left[node] : right[node];
+        if (depth == 0)
+            root = child;
+        else
+            replaceChild(path[depth - 1], node, child);
+
+        free(node);
+        size--;
+        rebalancePath(depth);
+        return true;
+    }
+
+    public float min() {
+        if (root == NONE)
+            throw new NoSuchElementException("The tree is empty");
+
+        int node = root;
+        while (left[node] != NONE)
+            node = left[node];
+        return keys[node];
+    }
+
+    public float max() {
+        if (root == NONE)
+            throw new NoSuchElementException("The tree is empty");
+
+        int node = root;
+        while (right[node] != NONE)
+            node = right[node];
+        return keys[node];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+     * The number of nodes on the longest path from the root down, 0 for an empty tree
+     */
+    public int height() {
+        return heightOf(root);
+    }
+
+    /*
+     * Returns the keys in ascending order
+     */
+    public float[] toArray() {
+        var sorted = new float[size];
+        var stack = new int[MAX_HEIGHT];
+        int depth = 0;
+        int idx = 0;
+
+        int node = root;
+        while (node != NONE || depth > 0) {
+            while (node != NONE) {
+                stack[depth++] = node;
+                node = left[node];
+            }
+
+            node = stack[--depth];
+            sorted[idx++] = keys[node];
+            node = right[node];
+        }
+
+        return sorted;
+    }
+
+    /*
+     * Returns a cursor over all the keys in ascending order
+     */
+    public Cursor cursor() {
+        return new Cursor(Float.NEGATIVE_INFINITY, Float.NaN, false);
+    }
+
+    /*
+     * Returns a cursor over the keys in [lo, hi], in ascending order or in descending order if descending
+     */
+    public Cursor cursor(float lo, float hi, boolean descending) {
+        return new Cursor(lo, hi, descending);
+    }
+
+    /*
+     * Returns a stream of all the keys in ascending order, widened to doubles. Call parallel() on it to process
+     * the subtrees in parallel. The tree must not be modified while the stream is in use
+     */
+    public DoubleStream stream() {
+        return StreamSupport.doubleStream(new TreeSpliterator(root, true, true, size, true), false);
+    }
+
+    // Prints the tree in BFS order, one level per line
+    public void printTree() {
+        if (root == NONE) return;
+
+        var queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+
+        int levelEnd = tail;
+        while (head < tail) {
+            int node = queue[head++];
+            System.out.print(keys[node] + " ");
+
+            if (left[node] != NONE)
+                queue[tail++] = left[node];
+            if (right[node] != NONE)
+                queue[tail++] = right[node];
+
+            if (head == levelEnd) {
+                System.out.println();
+                levelEnd = tail;
+            }
+        }
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Returns the node holding key, or NONE
+     */
+    int find(float key) {
+        int node = root;
+        while (node != NONE) {
+            int cmp = Float.compare(key, keys[node]);
+            if (cmp == 0) return node;
+            node = cmp < 0 ? left[node] : right[node];
+        }
+        return NONE;
+    }
+
+    int heightOf(int node) {
+        return node == NONE ? 0 : height[node];
+    }
+
+    int allocate(float key) {
+        int node;
+        if (freeNode != NONE) {
+            node = freeNode;
+            freeNode = left[node];
+        }
+        else {
+            if (nodesUsed == keys.length && !reclaimDroppedNodes())
+                expandArrs();
+
+            if (freeNode != NONE) {
+                node = freeNode;
+                freeNode = left[node];
+            }
+            else {
+                node = nodesUsed++;
+            }
+        }
+
+        keys[node] = key;
+        left[node] = NONE;
+        right[node] = NONE;
+        height[node] = 1;
+        return node;
+    }
+
+    private void free(int node) {
+        left[node] = freeNode;
+        freeNode = node;
+    }
+
+    private void expandArrs() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (left[parent] == oldChild)
+            left[parent] = newChild;
+        else
+            right[parent] = newChild;
+    }
+
+    /*
+     * Walks back up path[0, depth), rebalancing every node and re-linking the subtrees that were rotated
+     */
+    private void rebalancePath(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            int node = path[i];
+            int previousHeight = height[node];
+
+            int subtreeRoot = balance(node);
+            if (subtreeRoot != node) {
+                if (i == 0)
+                    root = subtreeRoot;
+                else
+                    replaceChild(path[i - 1], node, subtreeRoot);
+            }
+            else if (height[node] == previousHeight) {
+                break;
+            }
+        }
+    }
+
+    private void updateHeight(int node) {
+        height[node] = (byte) (Math.max(heightOf(left[node]), heightOf(right[node])) + 1);
+    }
+
+    /*
+     * Updates the height of node and rotates it if its subtrees' heights differ by 2.
+     * Returns the root of the subtree afterwards
+     */
+    int balance(int node) {
+        updateHeight(node);
+        int balance = heightOf(left[node]) - heightOf(right[node]);
+
+        // Left-heavy
+        if (balance > 1) {
+            int l = left[node];
+            if (heightOf(left[l]) < heightOf(right[l]))
+                left[node] = rotateLeft(l);
+            return rotateRight(node);
+        }
+
+        // Right-heavy
+        if (balance < -1) {
+            int r = right[node];
+            if (heightOf(right[r]) < heightOf(left[r]))
+                right[node] = rotateRight(r);
+            return rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    private int rotateRight(int node) {
+        int l = left[node];
+        left[node] = right[l];
+        right[l] = node;
+
+        updateHeight(node);
+        updateHeight(l);
+        return l;
+    }
+
+    private int rotateLeft(int node) {
+        int r = right[node];
+        right[node] = left[r];
+        left[r] = node;
+
+        updateHeight(node);
+        updateHeight(r);
+        return r;
+    }
+
+    /*
+     * The set operations drop nodes without putting them on the free list. Once they make up a quarter of the
+     * arrays, finds them by marking every node reachable from the root and frees the rest. Returns whether
+     * anything was freed
+     */
+    private boolean reclaimDroppedNodes() {
+        if (nodesUsed - size < nodesUsed / 4) return false;
+
+        var reachable = new long[(nodesUsed + 63) >>> 6];
+        var stack = new int[MAX_HEIGHT];
+        int depth = 0;
+        if (root != NONE)
+            stack[depth++] = root;
+        while (depth > 0) {
+            int node = stack[--depth];
+            reachable[node >>> 6] |= 1L << node;
+            if (left[node] != NONE)
+                stack[depth++] = left[node];
+            if (right[node] != NONE)
+                stack[depth++] = right[node];
+        }
+
+        freeNode = NONE;
+        for (int node = nodesUsed - 1; node >= 0; node--) {
+            if ((reachable[node >>> 6] & (1L << node)) == 0)
+                free(node);
+        }
+        return freeNode != NONE;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) return;
+
+        reclaimDroppedNodes();
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+
+    /*
+     * Gives this tree other's arrays (and whatever nodes are in them). other must not be used afterwards
+     */
+    private void takeArrays(AVLTree other) {
+        keys = other.keys;
+        left = other.left;
+        right = other.right;
+        height = other.height;
+        nodesUsed = other.nodesUsed;
+        freeNode = other.freeNode;
+    }
+
+    /*
+     * Copies the subtree of source rooted at node into this tree's arrays, shape and all, and returns the copy's root
+     */
+    private int copySubtree(AVLTree source, int node) {
+        if (node == NONE) return NONE;
+
+        int copy = allocate(source.keys[node]);
+        int copiedLeft = copySubtree(source, source.left[node]);
+        int copiedRight = copySubtree(source, source.right[node]);
+        left[copy] = copiedLeft;
+        right[copy] = copiedRight;
+        height[copy] = source.height[node];
+        return copy;
+    }
+
+    private int countNodes(int node) {
+        return node == NONE ? 0 : countNodes(left[node]) + 1 + countNodes(right[node]);
+    }
+
+    /*
+     * Links nodes [start, end], which hold sorted keys, into a perfectly balanced subtree and returns its root
+     */
+    private int buildBalanced(int start, int end) {
+        if (start > end) return NONE;
+
+        int mid = (start + end) >>> 1;
+        left[mid] = buildBalanced(start, mid - 1);
+        right[mid] = buildBalanced(mid + 1, end);
+        updateHeight(mid);
+        return mid;
+    }
+
+    private void runSetOperation(int operation, AVLTree other, ForkJoinPool pool) {
+        if (other == this)
+            throw new IllegalArgumentException("other must be a different tree");
+
+        // Copying other costs O(|other|), which only stays within O(m log(n/m + 1)) when other is the smaller tree.
+        // When it's bigger, intersection and difference look up this tree's keys in other instead of copying it
+        if (other.size > size && operation != SetOperation.UNION) {
+            filterByMembership(other, operation == SetOperation.INTERSECTION);
+            return;
+        }
+
+        // Both trees have to live in the same arrays. other is copied in before anything runs in parallel,
+        // so that the arrays never have to grow while the tasks are using them. Room is made first, since
+        // reclaiming in the middle of the copy would free the nodes copied so far
+        ensureCapacity(nodesUsed + other.size);
+        int otherRoot = copySubtree(other, other.root);
+
+        var found = new LongAdder();
+        root = pool.invoke(new SetOperation(operation, root, otherRoot, found));
+
+        if (operation == SetOperation.UNION)
+            size += other.size - found.intValue();
+        else if (operation == SetOperation.INTERSECTION)
+            size = found.intValue();
+        else
+            size -= found.intValue();
+    }
+
+    /*
+     * Keeps the keys of this tree that are in other (keepFound) or that aren't, looking each one up in other.
+     * That's O(m log n) for this tree's m keys, and other isn't copied. The kept keys are relinked into
+     * a perfectly balanced tree in nodes 0 to kept - 1
+     */
+    private void filterByMembership(AVLTree other, boolean keepFound) {
+        var sorted = toArray();
+        int kept = 0;
+        for (var key : sorted) {
+            if (other.contains(key) == keepFound)
+                sorted[kept++] = key;
+        }
+
+        nodesUsed = 0;
+        freeNode = NONE;
+        for (int i = 0; i < kept; i++)
+            allocate(sorted[i]);
+        root = buildBalanced(0, kept - 1);
+        size = kept;
+    }
+
+    /*
+     * split and splitLast return two subtrees packed into a long, as node + 1 so that NONE is 0. The sign bit
+     * says whether split found the key
+     */
+    private static long pack(int leftPart, int rightPart, boolean found) {
+        return ((long) (leftPart + 1) << 32) | (rightPart + 1) | (found ? Long.MIN_VALUE : 0);
+    }
+
+    private static int leftPart(long parts) {
+        return (int) ((parts >>> 32) & Integer.MAX_VALUE) - 1;
+    }
+
+    private static int rightPart(long parts) {
+        return (int) parts - 1;
+    }
+
+    private static boolean isFound(long parts) {
+        return parts < 0;
+    }
+
+    /*
+     * Splits the subtree rooted at node into the subtree of keys < key and the subtree of keys > key.
+     * The node holding key, if any, is dropped
+     */
+    private long split(int node, float key) {
+        if (node == NONE) return pack(NONE, NONE, false);
+
+        int cmp = Float.compare(key, keys[node]);
+        if (cmp == 0)
+            return pack(left[node], right[node], true);
+
+        if (cmp < 0) {
+            long parts = split(left[node], key);
+            return pack(leftPart(parts), join(rightPart(parts), node, right[node]), isFound(parts));
+        }
+
+        long parts = split(right[node], key);
+        return pack(join(left[node], node, leftPart(parts)), rightPart(parts), isFound(parts));
+    }
+
+    /*
+     * Takes the node with the largest key out of the subtree rooted at node.
+     * Returns the rest of the subtree and that node, packed
+     */
+    private long splitLast(int node) {
+        if (right[node] == NONE)
+            return pack(left[node], node, false);
+
+        long parts = splitLast(right[node]);
+        return pack(join(left[node], node, leftPart(parts)), rightPart(parts), false);
+    }
+
+    /*
+     * Joins l, middle and r into one AVL tree and returns its root. Every key in l must be smaller than middle's
+     * and every key in r larger. O(|height(l) - height(r)|): the shorter tree is hung off the taller one's spine
+     * at the first node that's about as high, and the nodes above are rebalanced on the way back up
+     */
+    private int join(int l, int middle, int r) {
+        int leftHeight = heightOf(l);
+        int rightHeight = heightOf(r);
+
+        if (leftHeight > rightHeight + 1) {
+            right[l] = join(right[l], middle, r);
+            return balance(l);
+        }
+        if (rightHeight > leftHeight + 1) {
+            left[r] = join(l, middle, left[r]);
+            return balance(r);
+        }
+
+        left[middle] = l;
+        right[middle] = r;
+        updateHeight(middle);
+        return middle;
+    }
+
+    /*
+     * Joins l and r, without a middle node
+     */
+    private int join(int l, int r) {
+        if (l == NONE) return r;
+        if (r == NONE) return l;
+
+        long parts = splitLast(l);
+        return join(leftPart(parts), rightPart(parts), r);
+    }
+
+    /*
+     * One union, intersection or difference of the subtrees a and b, which live in the same arrays.
+     * Subtrees of different tasks never share nodes, so they can be re-linked in parallel
+     */
+    private class SetOperation extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        static final int UNION = 0;
+        static final int INTERSECTION = 1;
+        static final int DIFFERENCE = 2;
+
+        private final int operation;
+        private final int a;
+        private final int b;
+
+        // How many keys of b were found in a
+        private final LongAdder found;
+
+        SetOperation(int operation, int a, int b, LongAdder found) {
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.found = found;
+        }
+
+        @Override
+        protected Integer compute() {
+            return run(a, b, Math.min(heightOf(a), heightOf(b)) > SEQUENTIAL_HEIGHT);
+        }
+
+        private int run(int a, int b, boolean parallel) {
+            if (a == NONE)
+                return operation == UNION ? b : NONE;
+            if (b == NONE)
+                return operation == INTERSECTION ? NONE : a;
+
+            // Union and intersection split b around a's root, difference splits a around b's root
+            int pivot = operation == DIFFERENCE ? b : a;
+            long parts = split(operation == DIFFERENCE ? a : b, keys[pivot]);
+            if (isFound(parts))
+                found.increment();
+
+            int leftA = operation == DIFFERENCE ? leftPart(parts) : left[a];
+            int leftB = operation == DIFFERENCE ? left[b] : leftPart(parts);
+            int rightA = operation == DIFFERENCE ? rightPart(parts) : right[a];
+            int rightB = operation == DIFFERENCE ? right[b] : rightPart(parts);
+
+            int leftResult;
+            int rightResult;
+            if (parallel) {
+                var leftTask = new SetOperation(operation, leftA, leftB, found);
+                leftTask.fork();
+                rightResult = new SetOperation(operation, rightA, rightB, found).compute();
+                leftResult = leftTask.join();
+            }
+            else {
+                leftResult = run(leftA, leftB, false);
+                rightResult = run(rightA, rightB, false);
+            }
+
+            boolean keepPivot = operation == UNION || (operation == INTERSECTION && isFound(parts));
+            if (keepPivot)
+                return AVLTree.this.join(leftResult, pivot, rightResult);
+            return AVLTree.this.join(leftResult, rightResult);
+        }
+    }
+
+    /*
+     * An in-order iterator over the keys in [lo, hi].
+     *
+     * The stack holds the nodes whose key hasn't been returned yet but whose subtree on the near side
+     * (the left one going up, the right one going down) has been, with the next key on top.
+     * An AVL tree is never more than MAX_HEIGHT high, so the stack is a fixed array allocated once
+     */
+    public class Cursor implements FloatIterator {
+        private final float lo;
+        private final float hi;
+        private final boolean descending;
+
+        private final int[] stack = new int[MAX_HEIGHT];
+        private int depth = 0;
+
+        private Cursor(float lo, float hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+
+            seek(descending ? hi : lo);
+        }
+
+        /*
+         * Moves the cursor so that the next key is the first one >= key (<= key if descending),
+         * staying within the cursor's range. O(log n)
+         */
+        public void seek(float key) {
+            depth = 0;
+
+            int node = root;
+            if (!descending) {
+                if (Float.compare(key, lo) < 0) key = lo;
+                while (node != NONE) {
+                    if (Float.compare(keys[node], key) >= 0) {
+                        stack[depth++] = node;
+                        node = left[node];
+                    }
+                    else {
+                        node = right[node];
+                    }
+                }
+            }
+            else {
+                if (Float.compare(key, hi) > 0) key = hi;
+                while (node != NONE) {
+                    if (Float.compare(keys[node], key) <= 0) {
+                        stack[depth++] = node;
+                        node = right[node];
+                    }
+                    else {
+                        node = left[node];
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (depth == 0) return false;
+
+            float next = keys[stack[depth - 1]];
+            return descending ? Float.compare(next, lo) >= 0 : Float.compare(next, hi) <= 0;
+        }
+
+        @Override
+        public float nextFloat() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            int node = stack[--depth];
+            if (!descending) {
+                for (int n = right[node]; n != NONE; n = left[n])
+                    stack[depth++] = n;
+            }
+            else {
+                for (int n = left[node]; n != NONE; n = right[n])
+                    stack[depth++] = n;
+            }
+            return keys[node];
+        }
+    }
+
+    /*
+     * A spliterator over the keys of a subtree, in ascending order.
+     *
+     * It covers node's left subtree (if withLeft), node itself, then node's right subtree (if withRight).
+     * trySplit hands off the left subtree when there is one, or else node's own key, keeping the rest,
+     * so both halves are always whole subtrees. The tree doesn't store subtree sizes, so only the spliterator
+     * over the whole tree knows its size exactly, until it's split; the halves estimate theirs.
+     * Once it has started walking it can't be split anymore
+     */
+    private class TreeSpliterator implements Spliterator.OfDouble {
+        private int node;
+        private boolean withLeft;
+        private boolean withRight;
+        private long estimatedSize;
+        private boolean isSizeExact;
+
+        // The walk, once started
+        private int[] stack;
+        private int depth = 0;
+
+        TreeSpliterator(int node, boolean withLeft, boolean withRight, long estimatedSize, boolean isSizeExact) {
+            this.node = node;
+            this.withLeft = withLeft;
+            this.withRight = withRight;
+            this.estimatedSize = estimatedSize;
+            this.isSizeExact = isSizeExact;
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            if (stack != null || node == NONE) return null;
+            isSizeExact = false;
+
+            if (withLeft && left[node] != NONE) {
+                withLeft = false;
+                long prefixSize = estimatedSize / 2;
+                estimatedSize -= prefixSize;
+                return new TreeSpliterator(left[node], true, true, prefixSize, false);
+            }
+
+            if (withRight && right[node] != NONE) {
+                // Handing off node's own key; what's left is the right subtree, which can be split again
+                var prefix = new TreeSpliterator(node, false, false, 1, false);
+                node = right[node];
+                withLeft = true;
+                estimatedSize = Math.max(estimatedSize - 1, 1);
+                return prefix;
+            }
+
+            return null;
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (stack == null) start();
+            if (depth == 0) return false;
+
+            int next = stack[--depth];
+            if (next != node || withRight) {
+                for (int n = right[next]; n != NONE; n = left[n])
+                    stack[depth++] = n;
+            }
+
+            if (estimatedSize > 0)
+                estimatedSize--;
+            action.accept(keys[next]);
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | (isSizeExact ? SIZED : 0);
+        }
+
+        @Override
+        public Comparator<? super Double> getComparator() {
+            return null;
+        }
+
+        private void start() {
+            stack = new int[MAX_HEIGHT];
+            if (node == NONE) return;
+
+            stack[depth++] = node;
+            if (withLeft) {
+                for (int n = left[node]; n != NONE; n = left[n])
+                    stack[depth++] = n;
+            }
+        }
+    }
+}
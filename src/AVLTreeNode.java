@@ -8,6 +8,8 @@ import java.util.Stack;
  * In hindsight, it's better to create another class called AVLTree which represents
  * the actual tree, and this class just represents a node in the tree: stores val, left, right, height
  * balance, etc.
+ *
+ * AVLTree is that class now, with the nodes stored in arrays and a complete remove
  */
 public class AVLTreeNode {
     private float val;
@@ -1,11 +1,59 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Objects;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
 
 public class App {
     public static void main(String[] args) throws Exception {
         testGraph();
+
+        // Behavioral checks: each one throws if what it checks doesn't hold
+        testParallelSorts();
+        testCountingAndRadixSorts();
+        testIntroSort();
+        testNaturalMergeSort();
+        testExternalSorter();
+        testSelection();
+        testPrimitiveSorts();
+        testVectorizedSorts();
+        testIncrementalSorter();
+        testComparatorSorts();
+        testIndexedBinaryHeap();
+        testDaryBinaryHeap();
+        testBinaryHeapBatches();
+        testConcurrentMultiQueue();
+        testOffHeapBinaryHeap();
+        testTopKHeap();
+        testMonotoneQueues();
+        testPairingHeap();
+        testPayloadHeap();
+        testArrayAVLTree();
+        testBSTOrderStatistics();
+        testTreeCursorsAndStreams();
+        testAVLTreeSetOperations();
+        testConcurrentAVLMap();
+        testPersistentAVLTree();
     }  
 
     static void testSort() {
@@ -137,4 +185,1392 @@ public class App {
 
         System.out.println("Done");
     }
+
+    static void testParallelSorts() {
+        // A small cutoff and pool so the fork/join paths are actually taken
+        var pool = new ForkJoinPool(4);
+        try {
+            checkSorts("parallelMergeSort", data -> SortingAlgos.parallelMergeSort(data, 64, pool));
+            checkSorts("parallelQuickSort", data -> SortingAlgos.parallelQuickSort(data, 64, pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+        checkSorts("parallelMergeSort (defaults)", SortingAlgos::parallelMergeSort);
+        checkSorts("parallelQuickSort (defaults)", SortingAlgos::parallelQuickSort);
+
+        System.out.println("parallel sorts: ok");
+    }
+
+    static void testCountingAndRadixSorts() {
+        checkSorts("countingSort", SortingAlgos::countingSort);
+        checkSorts("lsdRadixSort", SortingAlgos::lsdRadixSort);
+        checkSorts("lsdRadixSort (8 bit digits)", data -> SortingAlgos.lsdRadixSort(data, 8));
+        checkSorts("lsdRadixSort (16 bit digits)", data -> SortingAlgos.lsdRadixSort(data, 16));
+        checkSorts("msdRadixSort", SortingAlgos::msdRadixSort);
+
+        // The full int range, which must neither overflow countingSort's range nor allocate a 16GB histogram
+        for (var values : new int[][] { { Integer.MAX_VALUE, 0, Integer.MIN_VALUE, -1, 1 },
+                { Integer.MIN_VALUE, Integer.MIN_VALUE + 1 }, { Integer.MAX_VALUE, Integer.MAX_VALUE - 1 } }) {
+            var expected = values.clone();
+            Arrays.sort(expected);
+            for (var sort : List.<Consumer<int[]>>of(SortingAlgos::countingSort, SortingAlgos::lsdRadixSort,
+                    SortingAlgos::msdRadixSort)) {
+                var data = values.clone();
+                sort.accept(data);
+                check(Arrays.equals(data, expected), "counting/radix sort on " + Arrays.toString(values));
+            }
+        }
+
+        System.out.println("counting and radix sorts: ok");
+    }
+
+    static void testIntroSort() {
+        checkSorts("introSort", SortingAlgos::introSort);
+        checkSorts("introSort (dual pivot)", data -> SortingAlgos.introSort(data, true));
+        checkSorts("heapSort", SortingAlgos::heapSort);
+
+        // A big sawtooth gives lopsided partitions at every level; it must be sorted without running out of stack
+        var sawtooth = new int[1 << 20];
+        for (int i = 0; i < sawtooth.length; i++)
+            sawtooth[i] = i % 1000 < 500 ? i % 1000 : 1000 - i % 1000;
+        var expected = sawtooth.clone();
+        Arrays.sort(expected);
+        for (var dualPivot : new boolean[] { false, true }) {
+            var data = sawtooth.clone();
+            SortingAlgos.introSort(data, dualPivot);
+            check(Arrays.equals(data, expected), "introSort on a sawtooth, dualPivot " + dualPivot);
+        }
+
+        System.out.println("introSort: ok");
+    }
+
+    static void testNaturalMergeSort() {
+        checkSorts("naturalMergeSort", SortingAlgos::naturalMergeSort);
+
+        // Ascending and descending runs of random lengths, with ties inside and across runs
+        var random = new Random(4);
+        for (var n : new int[] { 100, 5000, 200_000 }) {
+            var data = new int[n];
+            int i = 0;
+            while (i < n) {
+                int runEnd = Math.min(n, i + 1 + random.nextInt(300));
+                boolean descending = random.nextBoolean();
+                int val = random.nextInt(1000);
+                for (; i < runEnd; i++) {
+                    data[i] = val;
+                    val += (descending ? -1 : 1) * random.nextInt(3);
+                }
+            }
+
+            var expected = data.clone();
+            Arrays.sort(expected);
+            SortingAlgos.naturalMergeSort(data);
+            check(Arrays.equals(data, expected), "naturalMergeSort on runs of " + n + " elements");
+        }
+
+        System.out.println("naturalMergeSort: ok");
+    }
+
+    static void testExternalSorter() throws IOException {
+        var dir = Files.createTempDirectory("external-sort");
+        var tmpDir = Files.createDirectory(dir.resolve("tmp"));
+        var input = dir.resolve("input.bin");
+        var output = dir.resolve("output.bin");
+        var random = new Random(5);
+
+        try {
+            // The smallest budget, with a fan-in of 3, takes several runs and merge passes for the bigger inputs
+            for (var n : new int[] { 0, 1, 1000, 300_000, 2_000_000 }) {
+                for (var byteOrder : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                    var data = random.ints(n).toArray();
+                    var bytes = ByteBuffer.allocate(n * Integer.BYTES).order(byteOrder);
+                    bytes.asIntBuffer().put(data);
+                    Files.write(input, bytes.array());
+
+                    new ExternalSorter(256 * 1024, 3, tmpDir, byteOrder).sort(input, output);
+
+                    var sorted = new int[n];
+                    ByteBuffer.wrap(Files.readAllBytes(output)).order(byteOrder).asIntBuffer().get(sorted);
+                    Arrays.sort(data);
+                    check(Arrays.equals(sorted, data), "ExternalSorter on " + n + " ints, " + byteOrder);
+                    check(tmpDir.toFile().list().length == 0, "ExternalSorter deletes its runs");
+                }
+            }
+
+            // A failing sort (the output is a directory) still deletes its runs
+            var badOutput = Files.createDirectory(dir.resolve("bad"));
+            try {
+                new ExternalSorter(256 * 1024, 3, tmpDir, ByteOrder.BIG_ENDIAN).sort(input, badOutput);
+                check(false, "ExternalSorter fails when it can't write the output");
+            }
+            catch (IOException e) {
+                check(tmpDir.toFile().list().length == 0, "a failed ExternalSorter deletes its runs");
+            }
+            Files.delete(badOutput);
+
+            try {
+                new ExternalSorter(128 * 1024, 3);
+                check(false, "ExternalSorter rejects a budget too small for a chunk and its windows");
+            }
+            catch (IllegalArgumentException e) {
+            }
+        }
+        finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(tmpDir);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println("ExternalSorter: ok");
+    }
+
+    static void testSelection() {
+        for (var n : new int[] { 1, 2, 31, 1000, 100_000 }) {
+            for (var input : sortInputs(n, n)) {
+                var sorted = input.clone();
+                Arrays.sort(sorted);
+
+                for (var k : new int[] { 0, n / 3, n / 2, n - 1 }) {
+                    var data = input.clone();
+                    check(SortingAlgos.select(data, k) == sorted[k], "select " + k + " of " + n);
+                    for (int i = 0; i < n; i++)
+                        check(i < k ? data[i] <= data[k] : data[i] >= data[k], "select partitions around k");
+
+                    data = input.clone();
+                    SortingAlgos.partialSort(data, k);
+                    check(Arrays.equals(Arrays.copyOf(data, k), Arrays.copyOf(sorted, k)), "partialSort " + k);
+
+                    var before = input.clone();
+                    var top = SortingAlgos.topK(input, k);
+                    check(Arrays.equals(input, before), "topK leaves data untouched");
+                    for (int i = 0; i < k; i++)
+                        check(top[i] == sorted[n - 1 - i], "topK " + k + " of " + n);
+                }
+            }
+        }
+
+        try {
+            SortingAlgos.select(new int[3], 3);
+            check(false, "select rejects k out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+
+        System.out.println("select, partialSort and topK: ok");
+    }
+
+    static void testPrimitiveSorts() {
+        var random = new Random(7);
+        for (var n : new int[] { 0, 1, 2, 1000, 100_000 }) {
+            var longs = random.longs(n).toArray();
+            for (int i = 0; i < n; i += 10)
+                longs[i] = i % 20 == 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+            var expectedLongs = longs.clone();
+            Arrays.sort(expectedLongs);
+            var data = longs.clone();
+            SortingAlgos.introSort(data);
+            check(Arrays.equals(data, expectedLongs), "introSort(long[]) on " + n + " elements");
+            for (var digitBits : new int[] { 8, 11, 16 }) {
+                data = longs.clone();
+                SortingAlgos.lsdRadixSort(data, digitBits);
+                check(Arrays.equals(data, expectedLongs), "lsdRadixSort(long[]) on " + n + " elements");
+            }
+
+            // Signed zeros, infinities and NaNs have to end up in Float.compare/Double.compare order
+            var specials = new double[] { -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                    Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE };
+            var doubles = new double[n];
+            var floats = new float[n];
+            for (int i = 0; i < n; i++) {
+                doubles[i] = i % 7 == 0 ? specials[i % specials.length] : random.nextGaussian() * 1e6;
+                floats[i] = (float) doubles[i];
+            }
+
+            var expectedDoubles = doubles.clone();
+            Arrays.sort(expectedDoubles);
+            var sortedDoubles = doubles.clone();
+            SortingAlgos.introSort(sortedDoubles);
+            check(Arrays.equals(sortedDoubles, expectedDoubles), "introSort(double[]) on " + n + " elements");
+            sortedDoubles = doubles.clone();
+            SortingAlgos.lsdRadixSort(sortedDoubles);
+            check(Arrays.equals(sortedDoubles, expectedDoubles), "lsdRadixSort(double[]) on " + n + " elements");
+
+            var expectedFloats = floats.clone();
+            Arrays.sort(expectedFloats);
+            var sortedFloats = floats.clone();
+            SortingAlgos.introSort(sortedFloats);
+            check(Arrays.equals(sortedFloats, expectedFloats), "introSort(float[]) on " + n + " elements");
+            sortedFloats = floats.clone();
+            SortingAlgos.lsdRadixSort(sortedFloats);
+            check(Arrays.equals(sortedFloats, expectedFloats), "lsdRadixSort(float[]) on " + n + " elements");
+
+            // Few distinct keys, so stability shows: equal keys must keep the order of their indexes
+            var keys = new int[n];
+            for (int i = 0; i < n; i++)
+                keys[i] = random.nextInt(10) - 5;
+            var keysBefore = keys.clone();
+            var perm = SortingAlgos.argsort(keys);
+            check(Arrays.equals(keys, keysBefore), "argsort leaves keys untouched");
+            for (int i = 1; i < n; i++) {
+                int prev = perm[i - 1];
+                int cur = perm[i];
+                check(keys[prev] < keys[cur] || (keys[prev] == keys[cur] && prev < cur),
+                        "argsort is a stable sorting permutation");
+            }
+
+            var payload = new int[n];
+            for (int i = 0; i < n; i++)
+                payload[i] = i;
+            SortingAlgos.sortWithPayload(keys, payload);
+            for (int i = 0; i < n; i++)
+                check(payload[i] == perm[i] && keys[i] == keysBefore[perm[i]], "sortWithPayload is stable");
+        }
+
+        System.out.println("long, float and double sorts, argsort and sortWithPayload: ok");
+    }
+
+    /*
+     * Checks the scalar fallback when run as is. To check the vector sorts themselves, build src-vector too and run
+     * with --add-modules jdk.incubator.vector
+     */
+    static void testVectorizedSorts() {
+        checkSorts("vectorizedIntroSort", SortingAlgos::vectorizedIntroSort);
+        checkSorts("vectorizedMergeSort", SortingAlgos::vectorizedMergeSort);
+
+        // Every length up to a few vectors, so each partial-vector tail and sorting network size is hit
+        var random = new Random(8);
+        for (int n = 0; n <= 80; n++) {
+            var values = random.ints(n, -50, 50).toArray();
+            var expected = values.clone();
+            Arrays.sort(expected);
+            for (var sort : List.<Consumer<int[]>>of(SortingAlgos::vectorizedIntroSort,
+                    SortingAlgos::vectorizedMergeSort)) {
+                var data = values.clone();
+                sort.accept(data);
+                check(Arrays.equals(data, expected), "vectorized sort on " + n + " elements");
+            }
+        }
+
+        System.out.println("vectorized sorts: ok");
+    }
+
+    static void testIncrementalSorter() {
+        var executor = Executors.newFixedThreadPool(3);
+        try {
+            var random = new Random(9);
+            for (var useExecutor : new boolean[] { false, true }) {
+                for (var runSize : new int[] { 1, 7, 1000 }) {
+                    var sorter = new IncrementalSorter(useExecutor ? executor : null, runSize);
+                    var all = new ArrayList<Integer>();
+
+                    // Batches smaller, equal to and bigger than runSize, some of them reused by the caller
+                    var reused = new int[runSize];
+                    for (int b = 0; b < 60; b++) {
+                        var batch = b % 3 == 0 ? reused : new int[random.nextInt(3 * runSize + 1)];
+                        for (int i = 0; i < batch.length; i++)
+                            batch[i] = random.nextInt(500) - 250;
+                        sorter.add(batch);
+                        for (var e : batch)
+                            all.add(e);
+                        Arrays.fill(reused, 0);
+                    }
+                    var streamed = random.ints(333, -250, 250).toArray();
+                    sorter.addAll(Arrays.stream(streamed));
+                    for (var e : streamed)
+                        all.add(e);
+
+                    check(sorter.size() == all.size(), "IncrementalSorter counts what was added");
+                    var expected = all.stream().mapToInt(e -> e).sorted().toArray();
+                    var out = new int[all.size()];
+                    check(sorter.drainTo(out) == out.length && Arrays.equals(out, expected),
+                            "IncrementalSorter, runSize " + runSize + ", executor " + useExecutor);
+
+                    try {
+                        sorter.add(new int[1]);
+                        check(false, "IncrementalSorter can't be added to once it's read");
+                    }
+                    catch (IllegalStateException e) {
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        var empty = new IncrementalSorter();
+        check(!empty.sortedIterator().hasNext(), "an empty IncrementalSorter has nothing to iterate");
+
+        System.out.println("IncrementalSorter: ok");
+    }
+
+    static void testComparatorSorts() {
+        var descending = IntComparator.naturalOrder().reversed();
+        checkSorts("mergeSort (natural order)", data -> SortingAlgos.mergeSort(data, IntComparator.naturalOrder()));
+
+        // quickSortHoare always pivots around the middle element, like the int[] one, so organ pipes and the like
+        // make it quadratic. It's only given random inputs here
+
+        var random = new Random(10);
+        for (var n : new int[] { 0, 1, 2, 31, 1000, 50_000 }) {
+            var values = random.ints(n).toArray();
+            var expected = values.clone();
+            Arrays.sort(expected);
+            for (int i = 0; i < n / 2; i++) {
+                int tmp = expected[i];
+                expected[i] = expected[n - 1 - i];
+                expected[n - 1 - i] = tmp;
+            }
+
+            var data = values.clone();
+            SortingAlgos.mergeSort(data, descending);
+            check(Arrays.equals(data, expected), "mergeSort in descending order on " + n + " elements");
+            data = values.clone();
+            SortingAlgos.quickSortHoare(data, descending);
+            check(Arrays.equals(data, expected), "quickSortHoare in descending order on " + n + " elements");
+            if (n <= 1000) {
+                data = values.clone();
+                SortingAlgos.insertionSort(data, descending);
+                check(Arrays.equals(data, expected), "insertionSort in descending order on " + n + " elements");
+            }
+
+            // Sorting indexes by a table with few distinct values: the stable sorts must keep tied indexes ascending
+            var table = random.ints(n, 0, 5).toArray();
+            var byTable = IntComparator.byLookup(table);
+            var stableSorts = n <= 1000
+                    ? List.<Consumer<int[]>>of(idx -> SortingAlgos.mergeSort(idx, byTable),
+                            idx -> SortingAlgos.insertionSort(idx, byTable))
+                    : List.<Consumer<int[]>>of(idx -> SortingAlgos.mergeSort(idx, byTable));
+            for (var sort : stableSorts) {
+                var indexes = new int[n];
+                for (int i = 0; i < n; i++)
+                    indexes[i] = i;
+                sort.accept(indexes);
+                for (int i = 1; i < n; i++) {
+                    int prev = indexes[i - 1];
+                    int cur = indexes[i];
+                    check(table[prev] < table[cur] || (table[prev] == table[cur] && prev < cur),
+                            "comparator sort by lookup is stable on " + n + " elements");
+                }
+            }
+        }
+
+        System.out.println("comparator sorts: ok");
+    }
+
+    /*
+     * Runs random operations on the heap and on a map of the live handles to their keys, and compares the two
+     */
+    static void testIndexedBinaryHeap() {
+        var random = new Random(11);
+        for (var isMinHeap : new boolean[] { false, true }) {
+            var heap = new IndexedBinaryHeap(4, isMinHeap);
+            var live = new HashMap<Integer, Integer>();
+
+            for (int op = 0; op < 50_000; op++) {
+                int key = random.nextInt(200);
+                int choice = random.nextInt(10);
+
+                if (choice < 4 || live.isEmpty()) {
+                    int handle = heap.insert(key);
+                    check(!live.containsKey(handle), "IndexedBinaryHeap gives out a live handle");
+                    live.put(handle, key);
+                }
+                else if (choice < 6) {
+                    int best = isMinHeap ? Collections.min(live.values())
+                            : Collections.max(live.values());
+                    int handle = heap.peekHandle();
+                    check(heap.poll() == best && live.get(handle) == best, "IndexedBinaryHeap polls the top key");
+                    live.remove(handle);
+                }
+                else if (choice < 7) {
+                    boolean present = live.containsValue(key);
+                    check(heap.remove(key) == present, "IndexedBinaryHeap.remove finds a key that's present");
+                    if (present) {
+                        // Exactly one of the handles with that key must be gone
+                        var removed = live.keySet().stream().filter(h -> !heap.containsHandle(h)).toList();
+                        check(removed.size() == 1 && live.get(removed.get(0)) == key, "remove takes one entry");
+                        live.remove(removed.get(0));
+                    }
+                }
+                else if (choice < 9) {
+                    int handle = live.keySet().stream().skip(random.nextInt(live.size())).findFirst().get();
+                    heap.changeKey(handle, key);
+                    live.put(handle, key);
+                }
+                else {
+                    int handle = live.keySet().stream().skip(random.nextInt(live.size())).findFirst().get();
+                    heap.removeHandle(handle);
+                    live.remove(handle);
+                    check(!heap.containsHandle(handle), "a removed handle isn't in the heap anymore");
+                }
+
+                check(heap.size() == live.size(), "IndexedBinaryHeap size");
+                check(heap.contains(key) == live.containsValue(key), "IndexedBinaryHeap.contains");
+            }
+
+            for (var entry : live.entrySet())
+                check(heap.getKey(entry.getKey()) == entry.getValue(), "IndexedBinaryHeap keeps each handle's key");
+
+            var polled = new ArrayList<Integer>();
+            while (!heap.isEmpty())
+                polled.add(heap.poll());
+            var expected = new ArrayList<>(live.values());
+            expected.sort(isMinHeap ? null : Collections.reverseOrder());
+            check(polled.equals(expected), "IndexedBinaryHeap polls everything in order");
+        }
+
+        System.out.println("IndexedBinaryHeap: ok");
+    }
+
+    /*
+     * Runs random inserts, removes and polls on every arity and order of BinaryHeap and on a PriorityQueue,
+     * and compares the two. The heap starts tiny and grows and shrinks a few times along the way
+     */
+    static void testDaryBinaryHeap() {
+        var random = new Random(12);
+        for (var arity : new int[] { 2, 4, 8 }) {
+            for (var isMinHeap : new boolean[] { false, true }) {
+                var heap = new BinaryHeap(1, arity, isMinHeap);
+                var model = new PriorityQueue<Integer>(isMinHeap ? null : Collections.reverseOrder());
+
+                for (int op = 0; op < 100_000; op++) {
+                    // Phases of mostly inserting and mostly removing, so the array grows and shrinks
+                    boolean growing = (op / 5000) % 2 == 0;
+                    int choice = random.nextInt(10);
+                    int val = random.nextInt(1000);
+
+                    if (model.isEmpty() || choice < (growing ? 7 : 3)) {
+                        heap.insert(val);
+                        model.add(val);
+                    }
+                    else if (choice < 8) {
+                        check(heap.poll() == model.poll(), "BinaryHeap polls the root");
+                    }
+                    else {
+                        heap.remove(val);
+                        model.remove(val);
+                    }
+
+                    check(heap.size() == model.size(), "BinaryHeap size");
+                    if (!model.isEmpty())
+                        check(heap.peek() == model.peek(), "BinaryHeap peek, arity " + arity);
+                }
+
+                while (!model.isEmpty())
+                    check(heap.poll() == model.poll(), "BinaryHeap drains in order");
+                check(heap.size() == 0, "BinaryHeap is empty after draining");
+            }
+        }
+
+        try {
+            new BinaryHeap(8, 3, false);
+            check(false, "BinaryHeap rejects an arity other than 2, 4 or 8");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        System.out.println("d-ary BinaryHeap: ok");
+    }
+
+    static void testBinaryHeapBatches() {
+        var random = new Random(13);
+        for (var arity : new int[] { 2, 4, 8 }) {
+            for (var isMinHeap : new boolean[] { false, true }) {
+                for (var n : new int[] { 0, 1, 2, 100, 10_000 }) {
+                    var values = random.ints(n, -500, 500).toArray();
+                    var heap = new BinaryHeap(values, arity, isMinHeap);
+                    var model = new PriorityQueue<Integer>(isMinHeap ? null : Collections.reverseOrder());
+                    for (var e : values)
+                        model.add(e);
+
+                    // Batches of a few values (heapified up one by one) and of many (the heap gets rebuilt)
+                    for (var batchSize : new int[] { 3, n + 50 }) {
+                        var batch = random.ints(batchSize, -500, 500).toArray();
+                        heap.insertAll(batch);
+                        for (var e : batch)
+                            model.add(e);
+                        check(heap.size() == model.size(), "BinaryHeap.insertAll size");
+                    }
+
+                    var top = heap.pollMany(7);
+                    for (var e : top)
+                        check(e == model.poll(), "BinaryHeap.pollMany, arity " + arity + ", " + n + " values");
+
+                    int replaced = heap.replaceTop(42);
+                    check(replaced == model.poll(), "BinaryHeap.replaceTop returns the old root");
+                    model.add(42);
+
+                    var out = new int[model.size() + 5];
+                    check(heap.drainTo(out) == model.size(), "BinaryHeap.drainTo count");
+                    for (int i = 0; model.size() > 0; i++)
+                        check(out[i] == model.poll(), "BinaryHeap.drainTo order");
+                    check(heap.size() == 0 && heap.pollMany(3).length == 0, "BinaryHeap is empty after drainTo");
+                }
+            }
+        }
+
+        System.out.println("BinaryHeap batches: ok");
+    }
+
+    static void testConcurrentMultiQueue() throws Exception {
+        // With a single shard, and in strict mode, polls are exact, duplicates included
+        var random = new Random(14);
+        for (var queue : new ConcurrentMultiQueue[] { new ConcurrentMultiQueue(1, 1, true),
+                ConcurrentMultiQueue.strict(true) }) {
+            var model = new PriorityQueue<Integer>();
+            for (int op = 0; op < 20_000; op++) {
+                if (model.isEmpty() || random.nextInt(3) > 0) {
+                    int val = random.nextInt(100);
+                    queue.insert(val);
+                    model.add(val);
+                }
+                else {
+                    check(queue.poll().getAsInt() == model.poll(), "an exact ConcurrentMultiQueue polls the top");
+                }
+            }
+            while (!model.isEmpty())
+                check(queue.poll().getAsInt() == model.poll(), "an exact ConcurrentMultiQueue drains in order");
+            check(queue.poll().isEmpty() && queue.isEmpty(), "an empty ConcurrentMultiQueue polls nothing");
+        }
+
+        // Many threads inserting and polling at once: every inserted value must come out exactly once
+        int threads = 6;
+        int perThread = 100_000;
+        for (var queue : new ConcurrentMultiQueue[] { new ConcurrentMultiQueue(threads),
+                new ConcurrentMultiQueue(2, 2, false), ConcurrentMultiQueue.strict(false) }) {
+            var polledCounts = new AtomicIntegerArray(1000);
+            var executor = Executors.newFixedThreadPool(threads);
+            try {
+                var tasks = new ArrayList<Callable<Void>>();
+                for (int t = 0; t < threads; t++) {
+                    tasks.add(() -> {
+                        for (int i = 0; i < perThread; i++) {
+                            queue.insert(i % 1000);
+                            if (i % 2 == 1)
+                                queue.poll().ifPresent(polledCounts::incrementAndGet);
+                        }
+                        return null;
+                    });
+                }
+                for (var future : executor.invokeAll(tasks))
+                    future.get();
+            }
+            finally {
+                executor.shutdown();
+            }
+
+            for (var polled = queue.poll(); polled.isPresent(); polled = queue.poll())
+                polledCounts.incrementAndGet(polled.getAsInt());
+            for (int val = 0; val < 1000; val++)
+                check(polledCounts.get(val) == threads * perThread / 1000, "ConcurrentMultiQueue loses no values");
+            check(queue.size() == 0, "ConcurrentMultiQueue is empty once drained");
+        }
+
+        System.out.println("ConcurrentMultiQueue: ok");
+    }
+
+    static void testOffHeapBinaryHeap() throws IOException {
+        // More than a page of entries, so the heap has to grow into a second page and sift across pages
+        var random = new Random(15);
+        var values = random.ints(OffHeapBinaryHeap.PAGE_INTS + 200_000).toArray();
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+
+        try (var heap = new OffHeapBinaryHeap(false)) {
+            for (var val : values)
+                heap.insert(val);
+            check(heap.size() == values.length && heap.peek() == sorted[sorted.length - 1], "OffHeapBinaryHeap peek");
+            for (int i = sorted.length - 1; i >= 0; i--)
+                check(heap.poll() == sorted[i], "OffHeapBinaryHeap polls in order");
+            check(heap.isEmpty(), "OffHeapBinaryHeap is empty after polling everything");
+        }
+
+        // A file-backed heap picks up where it was closed
+        var file = Files.createTempFile("heap", ".bin");
+        try {
+            try (var heap = OffHeapBinaryHeap.open(file, true)) {
+                for (var val : values)
+                    heap.insert(val);
+                for (int i = 0; i < 1000; i++)
+                    check(heap.poll() == sorted[i], "a file-backed OffHeapBinaryHeap polls in order");
+            }
+            try (var heap = OffHeapBinaryHeap.open(file, true)) {
+                check(heap.size() == values.length - 1000, "a reopened OffHeapBinaryHeap keeps its size");
+                for (int i = 1000; i < sorted.length; i++)
+                    check(heap.poll() == sorted[i], "a reopened OffHeapBinaryHeap polls in order");
+            }
+
+            try {
+                OffHeapBinaryHeap.open(file, false);
+                check(false, "OffHeapBinaryHeap.open rejects a heap of the other order");
+            }
+            catch (IllegalArgumentException e) {
+            }
+
+            Files.write(file, new byte[100]);
+            try {
+                OffHeapBinaryHeap.open(file, true);
+                check(false, "OffHeapBinaryHeap.open rejects a file that isn't a heap");
+            }
+            catch (IllegalArgumentException e) {
+            }
+        }
+        finally {
+            Files.delete(file);
+        }
+
+        System.out.println("OffHeapBinaryHeap: ok");
+    }
+
+    static void testTopKHeap() {
+        var random = new Random(16);
+        for (var keepSmallest : new boolean[] { false, true }) {
+            for (var k : new int[] { 1, 10, 1000 }) {
+                for (var n : new int[] { 0, k / 2, 100_000 }) {
+                    var values = random.ints(n, -1000, 1000).toArray();
+                    var sorted = values.clone();
+                    Arrays.sort(sorted);
+                    int kept = Math.min(k, n);
+                    var expected = new int[kept];
+                    for (int i = 0; i < kept; i++)
+                        expected[i] = keepSmallest ? sorted[i] : sorted[n - 1 - i];
+
+                    // One value at a time, and the same values in batches
+                    var oneByOne = new TopKHeap(k, keepSmallest);
+                    for (var val : values)
+                        oneByOne.offer(val);
+                    var batched = new TopKHeap(k, keepSmallest);
+                    for (int i = 0; i < n; i += 777)
+                        batched.offerAll(Arrays.copyOfRange(values, i, Math.min(n, i + 777)));
+
+                    for (var heap : new TopKHeap[] { oneByOne, batched }) {
+                        check(heap.size() == kept, "TopKHeap keeps min(k, n) values");
+                        check(Arrays.equals(heap.snapshotSorted(), expected), "TopKHeap keeps the top " + k);
+                        check(Arrays.equals(heap.snapshotSorted(), expected), "snapshotSorted leaves the heap as is");
+                        if (kept > 0)
+                            check(heap.threshold() == expected[kept - 1], "TopKHeap threshold is the worst kept");
+                    }
+                }
+            }
+        }
+
+        var heap = new TopKHeap(2);
+        check(heap.offer(5) && heap.offer(3) && !heap.offer(1) && heap.offer(4), "TopKHeap.offer says what's kept");
+
+        System.out.println("TopKHeap: ok");
+    }
+
+    static void testMonotoneQueues() {
+        // Random monotone workloads: every key inserted is the last key polled plus at most maxWeight
+        var random = new Random(17);
+        int maxWeight = 50;
+        for (var queue : new MonotoneQueue[] { new RadixHeap(), new BucketQueue(maxWeight) }) {
+            for (int round = 0; round < 2; round++) {
+                var model = new PriorityQueue<Long>();
+                var keyOf = new HashMap<Integer, Long>();
+                long last = 0;
+                int nextVertex = 0;
+
+                for (int op = 0; op < 100_000; op++) {
+                    if (model.isEmpty() || random.nextInt(5) < 3) {
+                        // RadixHeap takes any gap, so it gets big ones that land in its high buckets too
+                        long gap = random.nextInt(maxWeight + 1);
+                        long key = last + (queue instanceof RadixHeap && op % 2 == 0 ? gap << 33 : gap);
+                        queue.insert(key, nextVertex);
+                        keyOf.put(nextVertex, key);
+                        nextVertex++;
+                        model.add(key);
+                    }
+                    else {
+                        last = model.poll();
+                        check(queue.peekKey() == last, "MonotoneQueue peekKey is the smallest key");
+                        check(keyOf.remove(queue.poll()) == last, "MonotoneQueue polls a vertex with that key");
+                    }
+                    check(queue.size() == model.size(), "MonotoneQueue size");
+                }
+
+                // clear() must also forget the last key, so the next round can start over from 0
+                queue.clear();
+                check(queue.isEmpty(), "MonotoneQueue is empty after clear");
+            }
+        }
+
+        try {
+            var queue = new RadixHeap();
+            queue.insert(10, 0);
+            queue.poll();
+            queue.insert(9, 1);
+            check(false, "RadixHeap rejects a key below the last one polled");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        // Dijkstra with either queue must agree with the PriorityQueue version on a random graph
+        var graph = new HashMap<Integer, HashMap<Integer, Integer>>();
+        for (int n = 0; n < 2000; n++)
+            graph.put(n, new HashMap<Integer, Integer>());
+        for (int e = 0; e < 10_000; e++)
+            graph.get(random.nextInt(2000)).put(random.nextInt(2000), random.nextInt(maxWeight + 1));
+
+        var expected = GraphAlgos.getShortestPathsDijkstra(graph, 0);
+        check(expected.equals(GraphAlgos.getShortestPathsDijkstra(graph, 0, new RadixHeap())),
+                "Dijkstra with a RadixHeap");
+        check(expected.equals(GraphAlgos.getShortestPathsDijkstra(graph, 0, new BucketQueue(maxWeight))),
+                "Dijkstra with a BucketQueue");
+
+        System.out.println("RadixHeap, BucketQueue and Dijkstra: ok");
+    }
+
+    /*
+     * Runs random operations on a few PairingHeaps that share a Pool, and on a map of handles to keys per heap
+     */
+    static void testPairingHeap() {
+        var random = new Random(18);
+        for (var isMinHeap : new boolean[] { false, true }) {
+            var pool = new PairingHeap.Pool(2);
+            var heaps = new PairingHeap[4];
+            var models = new ArrayList<HashMap<Integer, Integer>>();
+            for (int i = 0; i < heaps.length; i++) {
+                heaps[i] = new PairingHeap(pool, isMinHeap);
+                models.add(new HashMap<Integer, Integer>());
+            }
+
+            for (int op = 0; op < 40_000; op++) {
+                int i = random.nextInt(heaps.length);
+                var heap = heaps[i];
+                var model = models.get(i);
+                int key = random.nextInt(1000);
+                int choice = random.nextInt(20);
+
+                if (model.isEmpty() || choice < 8) {
+                    model.put(heap.insert(key), key);
+                }
+                else if (choice < 12) {
+                    int best = isMinHeap ? Collections.min(model.values()) : Collections.max(model.values());
+                    int handle = heap.peekHandle();
+                    check(model.get(handle) == best && heap.poll() == best, "PairingHeap polls the top");
+                    model.remove(handle);
+                }
+                else if (choice < 17) {
+                    int handle = model.keySet().stream().skip(random.nextInt(model.size())).findFirst().get();
+                    heap.changeKey(handle, key);
+                    model.put(handle, key);
+                }
+                else if (choice < 19) {
+                    int handle = model.keySet().stream().skip(random.nextInt(model.size())).findFirst().get();
+                    heap.removeHandle(handle);
+                    model.remove(handle);
+                }
+                else {
+                    int j = random.nextInt(heaps.length);
+                    if (j == i) continue;
+                    heap.meld(heaps[j]);
+                    model.putAll(models.get(j));
+                    models.get(j).clear();
+                    check(heaps[j].isEmpty(), "a melded PairingHeap is left empty");
+                }
+
+                check(heap.size() == model.size(), "PairingHeap size");
+                if (!model.isEmpty()) {
+                    int best = isMinHeap ? Collections.min(model.values()) : Collections.max(model.values());
+                    check(heap.peek() == best, "PairingHeap peek");
+                }
+            }
+
+            for (int i = 0; i < heaps.length; i++) {
+                for (var entry : models.get(i).entrySet())
+                    check(heaps[i].getKey(entry.getKey()) == entry.getValue(), "PairingHeap keeps each handle's key");
+                var expected = new ArrayList<>(models.get(i).values());
+                expected.sort(isMinHeap ? null : Collections.reverseOrder());
+                for (var key : expected)
+                    check(heaps[i].poll() == key, "PairingHeap drains in order");
+            }
+        }
+
+        try {
+            new PairingHeap().meld(new PairingHeap());
+            check(false, "PairingHeap.meld rejects a heap from another Pool");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        System.out.println("PairingHeap: ok");
+    }
+
+    /*
+     * Compares PayloadHeap with a PriorityQueue of (priority, insertion order, payload) triples. Priorities repeat a
+     * lot, and both priorities and payloads can be negative
+     */
+    static void testPayloadHeap() {
+        var random = new Random(19);
+        for (var isMinHeap : new boolean[] { false, true }) {
+            for (var stable : new boolean[] { false, true }) {
+                Comparator<long[]> byPriority = Comparator.comparingLong(entry -> entry[0]);
+                var order = (isMinHeap ? byPriority : byPriority.reversed()).thenComparingLong(entry -> entry[1]);
+                var model = new PriorityQueue<long[]>(order);
+                var heap = new PayloadHeap(1, isMinHeap, stable);
+
+                // Without stable, any payload of the top priority may come out; they're counted per (priority, payload)
+                var pairCounts = new HashMap<Long, Integer>();
+
+                for (int op = 0; op < 100_000; op++) {
+                    if (model.isEmpty() || random.nextInt(5) < 3) {
+                        int priority = random.nextInt(20) - 10;
+                        int payload = random.nextInt();
+                        heap.insert(priority, payload);
+                        model.add(new long[] { priority, op, payload });
+                        pairCounts.merge(((long) priority << 32) | (payload & 0xFFFFFFFFL), 1, Integer::sum);
+                    }
+                    else {
+                        var expected = model.poll();
+                        check(heap.peekPriority() == expected[0], "PayloadHeap peekPriority");
+                        if (stable)
+                            check(heap.peekPayload() == expected[2], "a stable PayloadHeap peeks in insertion order");
+
+                        long entry = heap.poll();
+                        check(PayloadHeap.priorityOf(entry) == expected[0], "PayloadHeap polls the top priority");
+                        if (stable) {
+                            check(PayloadHeap.payloadOf(entry) == expected[2],
+                                    "a stable PayloadHeap polls equal priorities in insertion order");
+                        }
+                        check(pairCounts.merge(entry, -1, Integer::sum) >= 0, "PayloadHeap polls what was inserted");
+                    }
+                    check(heap.size() == model.size(), "PayloadHeap size");
+                }
+            }
+        }
+
+        System.out.println("PayloadHeap: ok");
+    }
+
+    static void testArrayAVLTree() {
+        var random = new Random(20);
+        var tree = new AVLTree(1);
+        var model = new TreeSet<Float>();
+
+        for (int op = 0; op < 200_000; op++) {
+            // Few distinct keys so inserts and removes often hit existing ones; -0.0 and NaN sort like Float.compare
+            float key = op % 101 == 0 ? (op % 2 == 0 ? -0.0f : Float.NaN) : random.nextInt(5000) / 4f - 500;
+            int choice = random.nextInt(10);
+
+            if (choice < 5)
+                check(tree.insert(key) == model.add(key), "AVLTree.insert says whether the key was new");
+            else if (choice < 8)
+                check(tree.remove(key) == model.remove(key), "AVLTree.remove says whether the key was there");
+            else
+                check(tree.contains(key) == model.contains(key), "AVLTree.contains");
+
+            if (op % 10_000 == 0)
+                checkAVLTree(tree, model, "AVLTree after " + op + " operations");
+        }
+        checkAVLTree(tree, model, "AVLTree");
+        check(Float.compare(tree.min(), model.first()) == 0 && Float.compare(tree.max(), model.last()) == 0,
+                "AVLTree min and max");
+
+        while (!model.isEmpty())
+            check(tree.remove(model.pollFirst()), "AVLTree removes everything");
+        check(tree.isEmpty() && tree.height() == 0, "AVLTree is empty after removing everything");
+
+        System.out.println("AVLTree: ok");
+    }
+
+    /*
+     * Runs random inserts and removes (with duplicate values) on a BST and on a sorted list, and checks every
+     * order statistic query against the list along the way
+     */
+    static void testBSTOrderStatistics() {
+        var random = new Random(21);
+        var root = new BinarySearchTreeNode(500);
+        var model = new ArrayList<Integer>(List.of(500));
+
+        for (int op = 0; op < 10_000; op++) {
+            int val = random.nextInt(1000);
+            if (random.nextInt(5) < 3 || model.size() == 1) {
+                root.insertNode(val);
+                int idx = Collections.binarySearch(model, val);
+                model.add(idx < 0 ? -idx - 1 : idx, val);
+            }
+            else {
+                root.removeNode(val);
+                model.remove((Integer) val);
+            }
+            check(root.getSize() == model.size(), "BST size after removeNode");
+
+            int lo = random.nextInt(1000);
+            int hi = lo + random.nextInt(100);
+            int below = (int) model.stream().filter(e -> e < val).count();
+            int atMost = (int) model.stream().filter(e -> e <= val).count();
+            check(root.rank(val) == below, "BST rank");
+            check(root.countInRange(lo, hi) == (int) model.stream().filter(e -> e >= lo && e <= hi).count(),
+                    "BST countInRange");
+
+            int k = random.nextInt(model.size());
+            check(root.select(k) == model.get(k), "BST select");
+
+            check(root.floor(val).equals(atMost > 0 ? OptionalInt.of(model.get(atMost - 1)) : OptionalInt.empty()),
+                    "BST floor");
+            check(root.predecessor(val).equals(below > 0 ? OptionalInt.of(model.get(below - 1)) : OptionalInt.empty()),
+                    "BST predecessor");
+            check(root.ceiling(val).equals(below < model.size() ? OptionalInt.of(model.get(below))
+                    : OptionalInt.empty()), "BST ceiling");
+            check(root.successor(val).equals(atMost < model.size() ? OptionalInt.of(model.get(atMost))
+                    : OptionalInt.empty()), "BST successor");
+        }
+        check(root.getMin() == model.get(0) && root.getMax() == model.get(model.size() - 1), "BST min and max");
+
+        try {
+            new BinarySearchTreeNode(1).removeNode(1);
+            check(false, "removing the only node of a BST is rejected");
+        }
+        catch (IllegalStateException e) {
+        }
+
+        System.out.println("BST order statistics: ok");
+    }
+
+    static void testTreeCursorsAndStreams() {
+        var random = new Random(22);
+
+        // The BST, with duplicate values
+        var root = new BinarySearchTreeNode(0);
+        var values = new ArrayList<Integer>(List.of(0));
+        for (int i = 0; i < 50_000; i++) {
+            int val = random.nextInt(20_000) - 10_000;
+            root.insertNode(val);
+            values.add(val);
+        }
+        Collections.sort(values);
+        var sortedValues = values.stream().mapToInt(e -> e).toArray();
+
+        check(Arrays.equals(iterate(root.cursor()), sortedValues), "BST cursor");
+        check(Arrays.equals(root.stream().toArray(), sortedValues), "BST stream");
+        check(Arrays.equals(root.stream().parallel().toArray(), sortedValues), "BST parallel stream");
+        check(root.stream().spliterator().getExactSizeIfKnown() == values.size(), "BST stream is SIZED");
+
+        var traversal = new StringBuilder();
+        for (var val : sortedValues)
+            traversal.append(val).append(", ");
+        check(root.getTraversalOrder().equals(traversal.toString()), "BST getTraversalOrder");
+
+        for (int i = 0; i < 200; i++) {
+            int lo = random.nextInt(22_000) - 11_000;
+            int hi = lo + random.nextInt(3000);
+            var inRange = values.stream().filter(e -> e >= lo && e <= hi).mapToInt(e -> e).toArray();
+            check(Arrays.equals(iterate(root.cursor(lo, hi, false)), inRange), "BST range cursor");
+
+            var descending = iterate(root.cursor(lo, hi, true));
+            for (int j = 0; j < descending.length; j++)
+                check(descending[j] == inRange[inRange.length - 1 - j], "BST descending range cursor");
+
+            // seek jumps ahead within the range
+            var cursor = root.cursor(lo, hi, false);
+            int target = lo + (hi - lo) / 2;
+            cursor.seek(target);
+            var rest = iterate(cursor);
+            check(Arrays.equals(rest, Arrays.stream(inRange).filter(e -> e >= target).toArray()), "BST cursor seek");
+        }
+
+        // The AVLTree, whose keys are floats, streamed as doubles
+        var tree = new AVLTree();
+        var model = new TreeSet<Float>();
+        for (int i = 0; i < 50_000; i++) {
+            float key = random.nextInt(200_000) / 8f - 10_000;
+            tree.insert(key);
+            model.add(key);
+        }
+        var sortedKeys = model.stream().mapToDouble(e -> e).toArray();
+
+        check(Arrays.equals(iterate(tree.cursor()), sortedKeys), "AVLTree cursor");
+        check(Arrays.equals(tree.stream().toArray(), sortedKeys), "AVLTree stream");
+        check(Arrays.equals(tree.stream().parallel().toArray(), sortedKeys), "AVLTree parallel stream");
+
+        for (int i = 0; i < 200; i++) {
+            float lo = random.nextInt(22_000) - 11_000;
+            float hi = lo + random.nextInt(3000);
+            var inRange = model.subSet(lo, true, hi, true).stream().mapToDouble(e -> e).toArray();
+            check(Arrays.equals(iterate(tree.cursor(lo, hi, false)), inRange), "AVLTree range cursor");
+
+            var descending = model.subSet(lo, true, hi, true).descendingSet().stream().mapToDouble(e -> e).toArray();
+            check(Arrays.equals(iterate(tree.cursor(lo, hi, true)), descending), "AVLTree descending range cursor");
+
+            var cursor = tree.cursor(lo, hi, true);
+            float target = lo + (hi - lo) / 2;
+            cursor.seek(target);
+            var rest = model.subSet(lo, true, target, true).descendingSet().stream().mapToDouble(e -> e).toArray();
+            check(Arrays.equals(iterate(cursor), rest), "AVLTree descending cursor seek");
+        }
+
+        System.out.println("tree cursors and streams: ok");
+    }
+
+    static void testAVLTreeSetOperations() {
+        var random = new Random(23);
+        var pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 300; round++) {
+                // Either tree may be the bigger one, by a lot, and they overlap partly
+                int thisSize = random.nextInt(round % 2 == 0 ? 50 : 20_000);
+                int otherSize = random.nextInt(round % 2 == 0 ? 20_000 : 50);
+                var thisModel = new TreeSet<Float>();
+                var otherModel = new TreeSet<Float>();
+                for (int i = 0; i < thisSize; i++)
+                    thisModel.add((float) random.nextInt(40_000));
+                for (int i = 0; i < otherSize; i++)
+                    otherModel.add((float) random.nextInt(40_000));
+
+                var tree = fromModel(thisModel);
+                var other = fromModel(otherModel);
+                var expected = new TreeSet<Float>(thisModel);
+                // Every other group of 3 rounds runs on the common pool
+                var roundPool = (round / 3) % 2 == 0 ? pool : ForkJoinPool.commonPool();
+                switch (round % 3) {
+                    case 0 -> {
+                        expected.addAll(otherModel);
+                        tree.union(other, roundPool);
+                    }
+                    case 1 -> {
+                        expected.retainAll(otherModel);
+                        tree.intersection(other, roundPool);
+                    }
+                    default -> {
+                        expected.removeAll(otherModel);
+                        tree.difference(other, roundPool);
+                    }
+                }
+
+                checkAVLTree(tree, expected, "AVLTree set operation " + round % 3);
+                checkAVLTree(other, otherModel, "the other tree of a set operation");
+
+                // The result is a normal tree that can keep being modified
+                for (int i = 0; i < 100; i++) {
+                    float key = random.nextInt(40_000);
+                    check(tree.insert(key) == expected.add(key), "insert after a set operation");
+                }
+                checkAVLTree(tree, expected, "AVLTree after a set operation and inserts");
+
+                float splitKey = random.nextInt(40_000);
+                var upper = tree.split(splitKey);
+                checkAVLTree(tree, new TreeSet<Float>(expected.headSet(splitKey, false)), "AVLTree.split lower part");
+                checkAVLTree(upper, new TreeSet<Float>(expected.tailSet(splitKey, true)), "AVLTree.split upper part");
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        try {
+            AVLTree.fromSorted(new float[] { 1, 3, 2 });
+            check(false, "AVLTree.fromSorted rejects unsorted keys");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        System.out.println("AVLTree set operations and split: ok");
+    }
+
+    static void testConcurrentAVLMap() throws Exception {
+        // Single-threaded, every answer must match a TreeMap
+        var random = new Random(24);
+        var map = new ConcurrentAVLMap<Integer>();
+        var model = new TreeMap<Float, Integer>();
+        for (int op = 0; op < 200_000; op++) {
+            float key = random.nextInt(3000);
+            int choice = random.nextInt(5);
+            if (choice < 2) {
+                int value = random.nextInt();
+                check(Objects.equals(map.put(key, value), model.put(key, value)), "ConcurrentAVLMap.put");
+            }
+            else if (choice < 4) {
+                check(Objects.equals(map.remove(key), model.remove(key)), "ConcurrentAVLMap.remove");
+            }
+            else {
+                check(Objects.equals(map.get(key), model.get(key)), "ConcurrentAVLMap.get");
+                float query = key + 0.5f * (random.nextInt(3) - 1);
+                check(Objects.equals(map.floorKey(query), model.floorKey(query)), "ConcurrentAVLMap.floorKey");
+                check(Objects.equals(map.ceilingKey(query), model.ceilingKey(query)), "ConcurrentAVLMap.ceilingKey");
+            }
+            check(map.size() == model.size(), "ConcurrentAVLMap.size");
+        }
+
+        // Writers that each own the keys equal to their index mod the number of writers, so each one knows what
+        // its keys map to, while readers run floor/ceiling queries across everyone's keys
+        int writers = 6;
+        var shared = new ConcurrentAVLMap<Integer>();
+        var stop = new AtomicBoolean();
+        var executor = Executors.newFixedThreadPool(writers + 2);
+        var owned = new ArrayList<TreeSet<Float>>();
+        try {
+            var readers = new ArrayList<Future<?>>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit(() -> {
+                    var readerRandom = new Random();
+                    while (!stop.get()) {
+                        float query = readerRandom.nextInt(20_000 * writers);
+                        var floor = shared.floorKey(query);
+                        var ceiling = shared.ceilingKey(query);
+                        check(floor == null || floor <= query, "a concurrent floorKey is <= the key");
+                        check(ceiling == null || ceiling >= query, "a concurrent ceilingKey is >= the key");
+                    }
+                    return null;
+                }));
+            }
+
+            var tasks = new ArrayList<Callable<TreeSet<Float>>>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                tasks.add(() -> {
+                    var writerRandom = new Random(writer);
+                    var mine = new TreeSet<Float>();
+                    for (int i = 0; i < 100_000; i++) {
+                        float key = writerRandom.nextInt(20_000) * writers + writer;
+                        if (writerRandom.nextInt(3) > 0) {
+                            shared.put(key, writer);
+                            mine.add(key);
+                        }
+                        else {
+                            check((shared.remove(key) != null) == mine.remove(key), "a concurrent remove");
+                        }
+                        check((shared.get(key) != null) == mine.contains(key), "a concurrent get of an owned key");
+                    }
+                    return mine;
+                });
+            }
+            for (var future : executor.invokeAll(tasks))
+                owned.add(future.get());
+
+            stop.set(true);
+            for (var reader : readers)
+                reader.get();
+        }
+        finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+
+        var all = new TreeMap<Float, Integer>();
+        for (int w = 0; w < writers; w++) {
+            for (var key : owned.get(w))
+                all.put(key, w);
+        }
+        check(shared.size() == all.size(), "ConcurrentAVLMap.size after the concurrent writes");
+        for (int i = 0; i < 20_000 * writers; i++) {
+            float key = i;
+            check(Objects.equals(shared.get(key), all.get(key)), "ConcurrentAVLMap.get after the concurrent writes");
+            float query = key + 0.5f;
+            check(Objects.equals(shared.floorKey(query), all.floorKey(query)), "floorKey after the concurrent writes");
+        }
+
+        System.out.println("ConcurrentAVLMap: ok");
+    }
+
+    static void testPersistentAVLTree() throws Exception {
+        // Every version must keep showing the keys it had when it was made, however many versions come after it
+        var random = new Random(25);
+        var tree = PersistentAVLTree.empty();
+        var model = new TreeSet<Float>();
+        var versions = new ArrayList<PersistentAVLTree>();
+        var versionModels = new ArrayList<TreeSet<Float>>();
+
+        for (int op = 0; op < 200_000; op++) {
+            float key = random.nextInt(5000);
+            if (random.nextBoolean()) {
+                var next = tree.insert(key);
+                check((next != tree) == model.add(key), "PersistentAVLTree.insert only makes a new version if it adds");
+                tree = next;
+            }
+            else {
+                var next = tree.remove(key);
+                check((next != tree) == model.remove(key),
+                        "PersistentAVLTree.remove only makes a new version if it removes");
+                tree = next;
+            }
+            check(tree.size() == model.size(), "PersistentAVLTree.size");
+
+            if (op % 20_000 == 0) {
+                versions.add(tree);
+                versionModels.add(new TreeSet<Float>(model));
+            }
+            if (op % 1000 == 0) {
+                float lo = random.nextInt(5000);
+                float hi = lo + random.nextInt(500);
+                var range = model.subSet(lo, true, hi, true);
+                check(Arrays.equals(iterate(tree.cursor(lo, hi, false)), range.stream().mapToDouble(e -> e).toArray()),
+                        "PersistentAVLTree range cursor");
+                check(Arrays.equals(iterate(tree.cursor(lo, hi, true)),
+                        range.descendingSet().stream().mapToDouble(e -> e).toArray()),
+                        "PersistentAVLTree descending range cursor");
+            }
+        }
+
+        for (int v = 0; v < versions.size(); v++) {
+            var version = versions.get(v);
+            var expected = versionModels.get(v).stream().mapToDouble(e -> e).toArray();
+            check(Arrays.equals(iterate(version.cursor()), expected), "an old PersistentAVLTree version is unchanged");
+            check(version.toArray().length == expected.length, "an old PersistentAVLTree version keeps its size");
+            check(version.height() <= 1.4405 * Math.log(version.size() + 2) / Math.log(2), "PersistentAVLTree height");
+        }
+
+        // SnapshotAVLTree: a writer inserts and removes pairs (k, k + 0.5) with update, and another one single keys
+        // with insert/remove in a separate range, while readers check that every snapshot is sorted and never
+        // holds half a pair
+        var snapshots = new SnapshotAVLTree();
+        var stop = new AtomicBoolean();
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var readers = new ArrayList<Future<?>>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!stop.get()) {
+                        var snapshot = snapshots.snapshot();
+                        var keys = snapshot.toArray();
+                        check(keys.length == snapshot.size(), "a snapshot's size matches its keys");
+                        for (int i = 0; i < keys.length; i++) {
+                            check(i == 0 || keys[i - 1] < keys[i], "a snapshot is sorted");
+                            if (keys[i] < 3000 && keys[i] % 1 == 0)
+                                check(snapshot.contains(keys[i] + 0.5f), "a snapshot never holds half an update");
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            var singles = executor.submit(() -> {
+                var writerRandom = new Random(1);
+                var mine = new TreeSet<Float>();
+                for (int i = 0; i < 50_000; i++) {
+                    float key = 3000 + writerRandom.nextInt(3000);
+                    if (writerRandom.nextBoolean())
+                        check(snapshots.insert(key) == mine.add(key), "SnapshotAVLTree.insert");
+                    else
+                        check(snapshots.remove(key) == mine.remove(key), "SnapshotAVLTree.remove");
+                }
+                return mine;
+            });
+
+            var pairs = new TreeSet<Float>();
+            for (int i = 0; i < 50_000; i++) {
+                float key = random.nextInt(3000);
+                if (random.nextBoolean()) {
+                    snapshots.update(t -> t.insert(key).insert(key + 0.5f));
+                    pairs.add(key);
+                    pairs.add(key + 0.5f);
+                }
+                else {
+                    snapshots.update(t -> t.remove(key).remove(key + 0.5f));
+                    pairs.remove(key);
+                    pairs.remove(key + 0.5f);
+                }
+            }
+
+            pairs.addAll(singles.get());
+            stop.set(true);
+            for (var reader : readers)
+                reader.get();
+
+            var expected = pairs.stream().mapToDouble(e -> e).toArray();
+            check(Arrays.equals(iterate(snapshots.snapshot().cursor()), expected), "SnapshotAVLTree ends up right");
+        }
+        finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+
+        System.out.println("PersistentAVLTree and SnapshotAVLTree: ok");
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Throws if a check fails, so a broken behavior stops the run instead of scrolling by in the output
+     */
+    static void check(boolean ok, String what) {
+        if (!ok)
+            throw new IllegalStateException("Check failed: " + what);
+    }
+
+    /*
+     * Checks that tree holds exactly the keys of model, and that it's as balanced as an AVL tree has to be:
+     * at most 1.44 * log2(n + 2) levels
+     */
+    static void checkAVLTree(AVLTree tree, TreeSet<Float> model, String what) {
+        check(tree.size() == model.size(), what + ": size");
+
+        var expected = new float[model.size()];
+        int i = 0;
+        for (var key : model)
+            expected[i++] = key;
+        check(Arrays.equals(tree.toArray(), expected), what + ": keys");
+
+        check(tree.height() <= 1.4405 * Math.log(tree.size() + 2) / Math.log(2), what + ": height");
+    }
+
+    /*
+     * An AVLTree built with fromSorted out of the keys of model, with a duplicate thrown in to be skipped
+     */
+    static AVLTree fromModel(TreeSet<Float> model) {
+        var keys = new float[model.size() + (model.isEmpty() ? 0 : 1)];
+        int i = 0;
+        for (var key : model)
+            keys[i++] = key;
+        if (!model.isEmpty())
+            keys[i] = model.last();
+
+        var tree = AVLTree.fromSorted(keys);
+        checkAVLTree(tree, model, "AVLTree.fromSorted");
+        return tree;
+    }
+
+    /*
+     * The values left in cursor
+     */
+    static int[] iterate(BinarySearchTreeNode.Cursor cursor) {
+        var values = new ArrayList<Integer>();
+        while (cursor.hasNext())
+            values.add(cursor.nextInt());
+        return values.stream().mapToInt(e -> e).toArray();
+    }
+
+    /*
+     * The keys left in cursor, widened to doubles so they compare with what AVLTree.stream() returns
+     */
+    static double[] iterate(FloatIterator cursor) {
+        var keys = new ArrayList<Double>();
+        while (cursor.hasNext())
+            keys.add((double) cursor.nextFloat());
+        return keys.stream().mapToDouble(e -> e).toArray();
+    }
+
+    /*
+     * Runs sort on every input of sortInputs, at a few sizes, and compares the result with Arrays.sort
+     */
+    static void checkSorts(String name, Consumer<int[]> sort) {
+        for (var n : new int[] { 0, 1, 2, 31, 1000, 100_000 }) {
+            for (var input : sortInputs(n, n)) {
+                var expected = input.clone();
+                Arrays.sort(expected);
+                sort.accept(input);
+                check(Arrays.equals(input, expected), name + " on " + n + " elements");
+            }
+        }
+    }
+
+    /*
+     * Inputs that tend to break sorts: random, sorted, reversed, all equal, few distinct values and organ pipe
+     */
+    static int[][] sortInputs(int n, long seed) {
+        var random = new Random(seed);
+        var inputs = new int[6][n];
+        for (int i = 0; i < n; i++) {
+            inputs[0][i] = random.nextInt();
+            inputs[1][i] = i;
+            inputs[2][i] = n - i;
+            inputs[3][i] = 7;
+            inputs[4][i] = random.nextInt(4) - 2;
+            inputs[5][i] = Math.min(i, n - i);
+        }
+        return inputs;
+    }
 }
@@ -1,45 +1,203 @@
-import java.lang.reflect.Array;
-import java.util.List;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
+/*
+ * An array-backed heap. It's a binary max heap by default, but it can also be built as a min heap and/or
+ * as a 4-ary or 8-ary heap.
+ *
+ * A d-ary heap is log2(d) times shallower than a binary heap, so heapifying touches fewer levels,
+ * and the d children of a node sit next to each other in the array.
+ * The entries are stored starting at index (d - 1) rather than 0, which makes every group of siblings
+ * start at a multiple of d: a 4-ary group is 16 bytes and an 8-ary group 32 bytes, so a group never
+ * spans more cache lines than it has to (relative to the start of the array, which the JVM decides).
+ */
 public class BinaryHeap {
-    
-    private int[] heap = new int[2];
+
+    private int[] heap;
     private int arrExpansionFactor = 2;
 
-    private float loadFactor = 0.75f;
+    // The array only shrinks once at most 1/4 of it is used, and then only to half its size, so a few
+    // removes right after an expansion don't cause another reallocation
+    private static final int SHRINK_DIVISOR = 4;
+
+    private final int minCapacity;
+    private final int arity;
+    private final boolean isMinHeap;
+
+    // Index of the root in the heap array; the parent/child formulas work on indexes relative to it
+    private final int offset;
+
     private int occupiedSlots = 0;
 
-    public BinaryHeap() {  }
+    public BinaryHeap() {
+        this(2);
+    }
 
     public BinaryHeap(int initialSize) {
-        heap = new int[initialSize];
+        this(initialSize, 2, false);
+    }
+
+    /*
+     * - arity: how many children each node has, one of 2, 4 or 8
+     * - isMinHeap: the root is the smallest element instead of the largest
+     */
+    public BinaryHeap(int initialSize, int arity, boolean isMinHeap) {
+        if (arity != 2 && arity != 4 && arity != 8)
+            throw new IllegalArgumentException("arity must be 2, 4 or 8");
+
+        this.arity = arity;
+        this.isMinHeap = isMinHeap;
+        this.offset = arity - 1;
+        this.minCapacity = Math.max(initialSize, 2);
+        heap = new int[offset + minCapacity];
+    }
+
+    /*
+     * Builds a binary max heap out of values in O(n)
+     */
+    public BinaryHeap(int[] values) {
+        this(values, 2, false);
+    }
+
+    /*
+     * Builds a heap out of values in O(n) with floyd's method: the values are copied in as they are and every
+     * node that has children is heapified down, from the last one up to the root. Most nodes are near the bottom
+     * and only move a level or two, which is what makes it linear rather than O(n log n) like n inserts
+     */
+    public BinaryHeap(int[] values, int arity, boolean isMinHeap) {
+        this(values.length, arity, isMinHeap);
+
+        System.arraycopy(values, 0, heap, offset, values.length);
+        occupiedSlots = values.length;
+        heapify();
     }
 
     public void insert(int val) {
-        if (occupiedSlots >= (heap.length * loadFactor))
+        if (occupiedSlots == capacity())
             expandArr();
-        
+
         int newItemIdx = occupiedSlots;
-        heap[newItemIdx] = val;
+        heap[offset + newItemIdx] = val;
         occupiedSlots++;
-        maxHeapifyUp();
+        heapifyUp(newItemIdx);
+    }
+
+    /*
+     * Inserts every element of values. The array grows at most once.
+     *
+     * Small batches are heapified up one by one, O(k log n) for k values. Once that would cost more than
+     * rebuilding the whole heap, the values are appended and the heap is rebuilt with floyd's method in O(n + k)
+     */
+    public void insertAll(int[] values) {
+        int newSize = occupiedSlots + values.length;
+        if (newSize > capacity()) {
+            int newCapacity = capacity();
+            while (newCapacity < newSize)
+                newCapacity *= arrExpansionFactor;
+            heap = Arrays.copyOf(heap, offset + newCapacity);
+        }
+
+        int levels = 32 - Integer.numberOfLeadingZeros(newSize);
+        boolean rebuild = (long) values.length * levels / Integer.numberOfTrailingZeros(arity) > newSize;
+
+        System.arraycopy(values, 0, heap, offset + occupiedSlots, values.length);
+        if (rebuild) {
+            occupiedSlots = newSize;
+            heapify();
+        }
+        else {
+            while (occupiedSlots < newSize) {
+                occupiedSlots++;
+                heapifyUp(occupiedSlots - 1);
+            }
+        }
+    }
+
+    /*
+     * Returns the root (the largest element, or the smallest in a min heap) without removing it
+     */
+    public int peek() {
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+        return heap[offset];
+    }
+
+    /*
+     * Removes and returns the root
+     */
+    public int poll() {
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+
+        int root = removeRoot();
+        shrinkIfSparse();
+        return root;
+    }
+
+    /*
+     * Replaces the root with val and returns the old root. It's a single heapify down, cheaper than a poll
+     * followed by an insert
+     */
+    public int replaceTop(int val) {
+        int root = peek();
+        heap[offset] = val;
+        heapifyDown(0);
+        return root;
+    }
+
+    /*
+     * Removes up to k elements from the top of the heap and returns them in the order they'd be polled
+     */
+    public int[] pollMany(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+
+        var polled = new int[Math.min(k, occupiedSlots)];
+        for (int i = 0; i < polled.length; i++)
+            polled[i] = removeRoot();
+
+        shrinkIfSparse();
+        return polled;
+    }
+
+    /*
+     * Removes elements from the top of the heap into out, in the order they'd be polled, until either the heap
+     * is empty or out is full. Returns how many elements were written
+     */
+    public int drainTo(int[] out) {
+        int count = Math.min(out.length, occupiedSlots);
+        for (int i = 0; i < count; i++)
+            out[i] = removeRoot();
+
+        shrinkIfSparse();
+        return count;
     }
 
     public void remove(int val) {
-        if (occupiedSlots <= (heap.length * loadFactor))
-            shrinkArr();
-        
         var targetIdx =  getIndexOf(val);
         if (targetIdx == -1) return;
 
-        heap[targetIdx] = heap[occupiedSlots - 1];
-
         occupiedSlots--;
-        maxHeapifyDown(targetIdx);
+        if (targetIdx != occupiedSlots) {
+            heap[offset + targetIdx] = heap[offset + occupiedSlots];
+
+            // The moved element can belong either above or below its new spot
+            heapifyDown(targetIdx);
+            heapifyUp(targetIdx);
+        }
+
+        shrinkIfSparse();
+    }
+
+    public int size() {
+        return occupiedSlots;
     }
 
+    /*
+     * Returns the elements in BFS order
+     */
     public int[] bfs() {
-        return heap.clone();
+        return Arrays.copyOfRange(heap, offset, offset + occupiedSlots);
     }
 
     public void printBfs() {
@@ -48,70 +206,125 @@ public class BinaryHeap {
 
         for (int i = 0; i < occupiedSlots; i++) {
             if (nodesPrinted == nodesPrintedToStartNewLine) {
-                System.out.print("\n");    
+                System.out.print("\n");
                 nodesPrinted = 0;
-                nodesPrintedToStartNewLine *= 2;
+                nodesPrintedToStartNewLine *= arity;
             }
-            System.out.print(heap[i] + "  ");
+            System.out.print(heap[offset + i] + "  ");
             nodesPrinted++;
         }
     }
 
     // ---------------- HELPER METHODS ----------------
+
+    /*
+     * The number of elements the heap array can hold
+     */
+    private int capacity() {
+        return heap.length - offset;
+    }
+
     private void expandArr() {
-        var previous = heap;
-        heap = new int[previous.length * arrExpansionFactor];
-        for (int i = 0; i < previous.length; i++)
-            heap[i] = previous[i];
+        heap = Arrays.copyOf(heap, offset + capacity() * arrExpansionFactor);
     }
 
     private void shrinkArr() {
-        var previous = heap;
-        heap = new int[occupiedSlots];
-        for (int i = 0; i < occupiedSlots; i ++)
-            heap[i] = previous[i];
+        heap = Arrays.copyOf(heap, offset + capacity() / 2);
     }
 
+    private void shrinkIfSparse() {
+        if (occupiedSlots <= capacity() / SHRINK_DIVISOR && capacity() / 2 >= minCapacity)
+            shrinkArr();
+    }
+
+    /*
+     * Removes the root without shrinking the array and returns it
+     */
+    private int removeRoot() {
+        int root = heap[offset];
+        occupiedSlots--;
+        if (occupiedSlots > 0) {
+            heap[offset] = heap[offset + occupiedSlots];
+            heapifyDown(0);
+        }
+        return root;
+    }
+
+    /*
+     * Restores the heap property over all the occupied slots (floyd's method)
+     */
+    private void heapify() {
+        if (occupiedSlots < 2) return;
+
+        for (int i = (occupiedSlots - 2) / arity; i >= 0; i--)
+            heapifyDown(i);
+    }
+
+    /*
+     * Returns the index (relative to the root) of an element equal to val, or -1
+     */
     private int getIndexOf(int val) {
-        for (int i = 0; i < heap.length; i++) {
-            if (heap[i] == val)
+        for (int i = 0; i < occupiedSlots; i++) {
+            if (heap[offset + i] == val)
                 return i;
         }
 
         return -1;
     }
 
-    private void maxHeapifyUp() {
-        int lastItemIdx = occupiedSlots - 1;
+    /*
+     * Whether a belongs above b in the heap
+     */
+    private boolean comesBefore(int a, int b) {
+        return isMinHeap ? a < b : a > b;
+    }
 
-        int childIdx = lastItemIdx;
-        int parentIdx = (childIdx - 1) / 2;
+    /*
+     * Moves the element at idx (relative to the root) up until its parent comes before it
+     */
+    private void heapifyUp(int idx) {
+        int val = heap[offset + idx];
 
-        while (heap[parentIdx] < heap[childIdx]) {
-            var parentVal = heap[parentIdx];
-            heap[parentIdx] = heap[childIdx];
-            heap[childIdx] = parentVal;
+        while (idx > 0) {
+            int parentIdx = (idx - 1) / arity;
+            int parentVal = heap[offset + parentIdx];
+            if (!comesBefore(val, parentVal)) break;
 
-            childIdx = parentIdx;
-            parentIdx = (childIdx - 1) / 2;
+            heap[offset + idx] = parentVal;
+            idx = parentIdx;
         }
+
+        heap[offset + idx] = val;
     }
 
-    private void maxHeapifyDown(int startIdx) {
-        int parentIdx = startIdx;
-        int leftChildIdx = parentIdx * 2 + 1;
-        int rightChildIdx = leftChildIdx + 1;
+    /*
+     * Moves the element at idx (relative to the root) down until it comes before all of its children
+     */
+    private void heapifyDown(int idx) {
+        int val = heap[offset + idx];
 
-        while (heap[parentIdx] < heap[leftChildIdx] || heap[parentIdx] < heap[rightChildIdx]) {
-            var newParentIdx = heap[leftChildIdx] > heap[rightChildIdx] ? leftChildIdx : rightChildIdx;
+        while (true) {
+            int firstChildIdx = idx * arity + 1;
+            if (firstChildIdx >= occupiedSlots) break;
 
-            var newParentVal = heap[newParentIdx];
-            heap[newParentIdx] = heap[parentIdx];
-            heap[parentIdx] = newParentVal;
-            
-            parentIdx = newParentIdx;
-            leftChildIdx = parentIdx * 2 + 1;
-            rightChildIdx = leftChildIdx + 1;
+            // Finding the child that comes first among the (up to arity) children
+            int lastChildIdx = Math.min(firstChildIdx + arity, occupiedSlots);
+            int bestChildIdx = firstChildIdx;
+            int bestChildVal = heap[offset + firstChildIdx];
+            for (int childIdx = firstChildIdx + 1; childIdx < lastChildIdx; childIdx++) {
+                int childVal = heap[offset + childIdx];
+                if (comesBefore(childVal, bestChildVal)) {
+                    bestChildIdx = childIdx;
+                    bestChildVal = childVal;
+                }
+            }
+
+            if (!comesBefore(bestChildVal, val)) break;
+
+            heap[offset + idx] = bestChildVal;
+            idx = bestChildIdx;
         }
+
+        heap[offset + idx] = val;
     }
 }
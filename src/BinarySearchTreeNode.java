@@ -1,3 +1,13 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
 /*
  * This is an implementation of a BST
  * It includes 3 subtree properties: height, depth, size
@@ -9,6 +19,11 @@
  * - getTraversalOrder(x): A traversal order of x is a string of tree's nodes' values
  *                          where all nodes' values in x's left subtree comes before x's value in the string, and
  *                          all nodes' values in x's right subtree comes after x's value in the string
+ * - order statistics that use the subtree sizes: rank, select, countInRange,
+ *   and floor/ceiling/predecessor/successor. They're all O(height)
+ * - cursor(): an in-order iterator over the values (optionally a range of them, optionally descending)
+ *   that walks the tree with an explicit stack, so a full scan is O(n) and allocates nothing per value
+ * - stream(): an IntStream over the values, whose spliterator splits at subtree boundaries
  * It also includes helper methods such as updateHeight(), getMinNodeAndParent(), getMaxNodeAndParent()
  */
 
@@ -91,17 +106,35 @@ public class BinarySearchTreeNode {
     public String getTraversalOrder() {
         StringBuilder traversalOrder = new StringBuilder();
 
-        if (this.left != null) {
-            traversalOrder.append( this.left.getTraversalOrder() );
+        var cursor = this.cursor();
+        while (cursor.hasNext()) {
+            traversalOrder.append(cursor.nextInt());
+            traversalOrder.append(", ");
         }
 
-        traversalOrder.append(this.val);
-        traversalOrder.append(", ");
+        return traversalOrder.toString();
+    }
 
-        if (this.right != null)
-            traversalOrder.append( this.right.getTraversalOrder() );
+    /*
+     * Returns a cursor over all the values of the subtree of this node, in ascending order
+     */
+    public Cursor cursor() {
+        return new Cursor(this, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+    }
 
-        return traversalOrder.toString();
+    /*
+     * Returns a cursor over the values in [lo, hi], in ascending order or in descending order if descending
+     */
+    public Cursor cursor(int lo, int hi, boolean descending) {
+        return new Cursor(this, lo, hi, descending);
+    }
+
+    /*
+     * Returns a stream of all the values in ascending order. Call parallel() on it to process the subtrees
+     * in parallel. The tree must not be modified while the stream is in use
+     */
+    public IntStream stream() {
+        return StreamSupport.intStream(new TreeSpliterator(this, true, true), false);
     }
 
     /*
@@ -124,12 +157,163 @@ public class BinarySearchTreeNode {
             return this.right.getMax();
     }
 
+    /*
+     * The number of values in the tree that are smaller than val. If val is in the tree, that's its index
+     * in the traversal order
+     */
+    public int rank(int val) {
+        int rank = 0;
+        var node = this;
+        while (node != null) {
+            if (val > node.val) {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /*
+     * Returns the k-th smallest value (starting from 0), i.e. the value at index k of the traversal order
+     */
+    public int select(int k) {
+        if (k < 0 || k >= this.size)
+            throw new IllegalArgumentException("k must be in [0, " + this.size + ")");
+
+        var node = this;
+        while (true) {
+            int leftSize = sizeOf(node.left);
+            if (k == leftSize)
+                return node.val;
+
+            if (k < leftSize) {
+                node = node.left;
+            }
+            else {
+                k -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /*
+     * The number of values in [lo, hi]
+     */
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) return 0;
+        return countAtMost(hi) - rank(lo);
+    }
+
+    /*
+     * The largest value <= val
+     */
+    public OptionalInt floor(int val) {
+        var node = this;
+        OptionalInt floor = OptionalInt.empty();
+        while (node != null) {
+            if (node.val == val) return OptionalInt.of(val);
+
+            if (node.val < val) {
+                floor = OptionalInt.of(node.val);
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return floor;
+    }
+
+    /*
+     * The smallest value >= val
+     */
+    public OptionalInt ceiling(int val) {
+        var node = this;
+        OptionalInt ceiling = OptionalInt.empty();
+        while (node != null) {
+            if (node.val == val) return OptionalInt.of(val);
+
+            if (node.val > val) {
+                ceiling = OptionalInt.of(node.val);
+                node = node.left;
+            }
+            else {
+                node = node.right;
+            }
+        }
+        return ceiling;
+    }
+
+    /*
+     * The largest value < val
+     */
+    public OptionalInt predecessor(int val) {
+        var node = this;
+        OptionalInt predecessor = OptionalInt.empty();
+        while (node != null) {
+            if (node.val < val) {
+                predecessor = OptionalInt.of(node.val);
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return predecessor;
+    }
+
+    /*
+     * The smallest value > val
+     */
+    public OptionalInt successor(int val) {
+        var node = this;
+        OptionalInt successor = OptionalInt.empty();
+        while (node != null) {
+            if (node.val > val) {
+                successor = OptionalInt.of(node.val);
+                node = node.left;
+            }
+            else {
+                node = node.right;
+            }
+        }
+        return successor;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
     public void removeNode(int val) {
-        var targetNodeAndParent = getNodeWithValAndItsParent(val, null);
+        this.removeNode(val, null);
+    }
 
-        // If the target node isn't found
-        if (targetNodeAndParent == null) return;
-        targetNodeAndParent[0].removeNode(targetNodeAndParent[1]);
+    /*
+     * Finds the node with val under THIS NODE and removes it. Returns whether a node was removed, so the
+     * nodes on the way back up know to update their height and size
+     */
+    private boolean removeNode(int val, BinarySearchTreeNode parent) {
+        if (this.val == val) {
+            if (parent == null && this.left == null && this.right == null)
+                throw new IllegalStateException("Can't remove the only node of the tree");
+
+            this.removeNode(parent);
+            return true;
+        }
+
+        var child = val >= this.val ? this.right : this.left;
+        if (child == null || !child.removeNode(val, this)) return false;
+
+        updateHeight();
+        updateSize();
+        return true;
     }
 
     /*
@@ -160,7 +344,10 @@ public class BinarySearchTreeNode {
             this.val = predecessorVal;
             
             predecessor.removeNode(predecessorParent);
-            this.left.updateHeightAndSizeForAncestorsOfMaxNode();
+
+            // The predecessor may have been this.left itself, and a leaf
+            if (this.left != null)
+                this.left.updateHeightAndSizeForAncestorsOfMaxNode();
         } 
         // Otherwise, we know that the right child isn't null
         else {
@@ -175,7 +362,8 @@ public class BinarySearchTreeNode {
             this.val = successorVal;
 
             successor.removeNode(successorParent);
-            this.right.updateHeightAndSizeForAncestorsOfMinNode();
+            if (this.right != null)
+                this.right.updateHeightAndSizeForAncestorsOfMinNode();
         }
         updateHeight();
         updateSize();
@@ -230,19 +418,211 @@ public class BinarySearchTreeNode {
         return this.right.getMinNodeAndParent(this);
     }
 
-    private BinarySearchTreeNode[] getNodeWithValAndItsParent(int val, BinarySearchTreeNode parent) {
-        if (this.val == val)
-            return new BinarySearchTreeNode[] { this, parent };
+    private static int sizeOf(BinarySearchTreeNode node) {
+        return node == null ? 0 : node.size;
+    }
 
-        if (val >= this.val) 
-            if (this.right != null)
-                return this.right.getNodeWithValAndItsParent(val, this);
-            else 
-                return null;
-        else
-            if (this.left != null)
-                return this.left.getNodeWithValAndItsParent(val, this);
-            else
-                return null;
+    /*
+     * The number of values <= val
+     */
+    private int countAtMost(int val) {
+        int count = 0;
+        var node = this;
+        while (node != null) {
+            if (val >= node.val) {
+                count += sizeOf(node.left) + 1;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * An in-order iterator over the values of a subtree that fall in [lo, hi].
+     *
+     * The stack holds the nodes whose value hasn't been returned yet but whose subtree on the near side
+     * (the left one going up, the right one going down) has been, with the next value on top.
+     * It never holds more than height + 1 nodes, and it's the only thing allocated, once
+     */
+    public static class Cursor implements PrimitiveIterator.OfInt {
+        private final BinarySearchTreeNode root;
+        private final int lo;
+        private final int hi;
+        private final boolean descending;
+
+        private BinarySearchTreeNode[] stack;
+        private int depth = 0;
+
+        private Cursor(BinarySearchTreeNode root, int lo, int hi, boolean descending) {
+            this.root = root;
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            this.stack = new BinarySearchTreeNode[root.height + 2];
+
+            seek(descending ? hi : lo);
+        }
+
+        /*
+         * Moves the cursor so that the next value is the first one >= val (<= val if descending),
+         * staying within the cursor's range. O(height)
+         */
+        public void seek(int val) {
+            depth = 0;
+
+            var node = root;
+            if (!descending) {
+                val = Math.max(val, lo);
+                while (node != null) {
+                    if (node.val >= val) {
+                        push(node);
+                        node = node.left;
+                    }
+                    else {
+                        node = node.right;
+                    }
+                }
+            }
+            else {
+                val = Math.min(val, hi);
+                while (node != null) {
+                    if (node.val <= val) {
+                        push(node);
+                        node = node.right;
+                    }
+                    else {
+                        node = node.left;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (depth == 0) return false;
+
+            int next = stack[depth - 1].val;
+            return descending ? next >= lo : next <= hi;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            var node = stack[--depth];
+            if (!descending) {
+                for (var n = node.right; n != null; n = n.left)
+                    push(n);
+            }
+            else {
+                for (var n = node.left; n != null; n = n.right)
+                    push(n);
+            }
+            return node.val;
+        }
+
+        private void push(BinarySearchTreeNode node) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[depth++] = node;
+        }
+    }
+
+    /*
+     * A spliterator over the values of a subtree, in ascending order.
+     *
+     * It covers node's left subtree (if withLeft), node itself, then node's right subtree (if withRight).
+     * trySplit hands off the left subtree when there is one, or else node's own value, keeping the rest,
+     * so both halves are always whole subtrees and their sizes are known exactly from the size fields.
+     * Once it has started walking it can't be split anymore
+     */
+    private static class TreeSpliterator implements Spliterator.OfInt {
+        private BinarySearchTreeNode node;
+        private boolean withLeft;
+        private boolean withRight;
+        private long remaining;
+
+        // The walk, once started
+        private BinarySearchTreeNode[] stack;
+        private int depth = 0;
+
+        TreeSpliterator(BinarySearchTreeNode node, boolean withLeft, boolean withRight) {
+            this.node = node;
+            this.withLeft = withLeft;
+            this.withRight = withRight;
+            this.remaining = (withLeft ? sizeOf(node.left) : 0) + 1 + (withRight ? sizeOf(node.right) : 0);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (stack != null) return null;
+
+            if (withLeft && node.left != null) {
+                withLeft = false;
+                remaining -= node.left.size;
+                return new TreeSpliterator(node.left, true, true);
+            }
+
+            if (withRight && node.right != null) {
+                // Handing off node's own value; what's left is the right subtree, which can be split again
+                var prefix = new TreeSpliterator(node, false, false);
+                node = node.right;
+                withLeft = true;
+                remaining = node.size;
+                return prefix;
+            }
+
+            return null;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (stack == null) start();
+            if (depth == 0) return false;
+
+            var next = stack[--depth];
+            if (next != node || withRight) {
+                for (var n = next.right; n != null; n = n.left)
+                    push(n);
+            }
+
+            remaining--;
+            action.accept(next.val);
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+
+        private void start() {
+            stack = new BinarySearchTreeNode[node.height + 2];
+            push(node);
+            if (withLeft) {
+                for (var n = node.left; n != null; n = n.left)
+                    push(n);
+            }
+        }
+
+        private void push(BinarySearchTreeNode n) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[depth++] = n;
+        }
     }
 }
@@ -0,0 +1,99 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * A monotone priority queue for when the keys in the queue never span more than maxWeight + 1 values,
+ * e.g. Dijkstra's algorithm on a graph whose edge weights are at most maxWeight ("Dial's algorithm").
+ *
+ * There is one bucket per possible key in [current, current + maxWeight], used as a circular array:
+ * the key k lives in bucket k % (maxWeight + 1). insert is O(1) and poll is O(1) plus the empty buckets it
+ * skips over, which adds up to at most the largest key polled. That beats a RadixHeap when maxWeight is small.
+ *
+ * Buckets are growable int arrays of vertices (the key is implied by the bucket) that are reused, so once they're
+ * big enough nothing is allocated.
+ */
+public class BucketQueue implements MonotoneQueue {
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    private final int maxWeight;
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+
+    // The smallest key that can be in the queue, and its bucket
+    private long current = 0;
+    private int currentBucket = 0;
+
+    private int size = 0;
+
+    /*
+     * - maxWeight: how far above the last key polled a key may be. Memory is O(maxWeight)
+     */
+    public BucketQueue(int maxWeight) {
+        if (maxWeight < 0 || maxWeight == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("maxWeight must be in [0, Integer.MAX_VALUE)");
+
+        this.maxWeight = maxWeight;
+        this.buckets = new int[maxWeight + 1][];
+        this.bucketSizes = new int[maxWeight + 1];
+    }
+
+    @Override
+    public void insert(long key, int vertex) {
+        if (key < current || key - current > maxWeight)
+            throw new IllegalArgumentException("key " + key + " is outside of [" + current + ", "
+                    + (current + maxWeight) + "]");
+
+        int bucket = (int) ((currentBucket + (key - current)) % buckets.length);
+        int bucketSize = bucketSizes[bucket];
+        if (buckets[bucket] == null)
+            buckets[bucket] = new int[INITIAL_BUCKET_CAPACITY];
+        else if (bucketSize == buckets[bucket].length)
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSize * 2);
+
+        buckets[bucket][bucketSize] = vertex;
+        bucketSizes[bucket] = bucketSize + 1;
+        size++;
+    }
+
+    @Override
+    public long peekKey() {
+        advance();
+        return current;
+    }
+
+    @Override
+    public int poll() {
+        advance();
+
+        size--;
+        return buckets[currentBucket][--bucketSizes[currentBucket]];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bucketSizes, 0);
+        current = 0;
+        currentBucket = 0;
+        size = 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Moves current forward to the smallest key in the queue
+     */
+    private void advance() {
+        if (size == 0)
+            throw new NoSuchElementException("The queue is empty");
+
+        while (bucketSizes[currentBucket] == 0) {
+            currentBucket = currentBucket + 1 == buckets.length ? 0 : currentBucket + 1;
+            current++;
+        }
+    }
+}
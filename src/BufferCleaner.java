@@ -0,0 +1,45 @@
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/*
+ * Frees direct and mapped buffers right away through sun.misc.Unsafe.invokeCleaner (module jdk.unsupported),
+ * instead of whenever the GC gets to them. For a mapped buffer that means unmapping it.
+ * If that isn't accessible the buffers are left for the GC to free.
+ *
+ * A buffer must not be used in any way after it's been freed.
+ */
+final class BufferCleaner {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private BufferCleaner() {
+    }
+
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || buffer == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        }
+        catch (ReflectiveOperationException e) {
+            // Left for the GC
+        }
+    }
+}
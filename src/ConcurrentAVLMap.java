@@ -0,0 +1,767 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A sorted map from float keys to values that many threads can read and write at once. It's an AVL tree with
+ * optimistic concurrency control, after Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent Binary
+ * Search Tree" (PPoPP 2010).
+ *
+ * Reads (get, containsKey, floorKey, ceilingKey) take no locks. Every node has a version number that
+ * changes whenever a rotation moves the node down, i.e. whenever its subtree might lose keys. A reader walks
+ * down hand-over-hand: it reads a node's child, then checks that the node's version hasn't changed. If it has,
+ * the child it read might not cover the key anymore, so the reader backs up one level and tries again.
+ * A reader only blocks when it meets a node in the middle of a rotation, until that rotation is done.
+ *
+ * Writers lock the node they attach to or detach from, plus, for rebalancing, the parent of the node being
+ * rotated and the one or two children that the rotation moves. Everything else stays unlocked, so writers in
+ * different parts of the tree don't wait for each other.
+ *
+ * Removing a key whose node has two children only clears the node's value, which leaves it in the tree as a
+ * routing node. Routing nodes are unlinked as soon as they're down to one child.
+ *
+ * Keys are ordered like Float.compare, as in AVLTree. Values can't be null. size() is exact only when no
+ * other thread is writing.
+ */
+public class ConcurrentAVLMap<V> {
+    // Version bits: the node has been unlinked, or a rotation is moving it down right now. Every finished
+    // change adds VERSION_STEP
+    private static final long UNLINKED = 1;
+    private static final long CHANGING = 2;
+    private static final long VERSION_STEP = 4;
+
+    // What nodeCondition returns when the node needs more than a height update
+    private static final int UNLINK_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int NOTHING_REQUIRED = -3;
+
+    // How long a reader spins on a node that's being rotated before waiting for the rotation's lock
+    private static final int SPINS = 100;
+
+    // Returned by the attempt methods when they have to back up a level
+    private static final Object RETRY = new Object();
+    private static final Node<Object> RETRY_NODE = new Node<>(Float.NaN, null, null);
+
+    // The tree hangs off the holder's right child. The holder is never rotated, so its version never changes
+    private final Node<V> holder = new Node<>(Float.NaN, null, null);
+
+    private final LongAdder size = new LongAdder();
+
+    /*
+     * Returns the value of key, or null if it isn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(float key) {
+        while (true) {
+            var result = attemptGet(key, holder, 1, 0);
+            if (result != RETRY)
+                return (V) result;
+        }
+    }
+
+    public boolean containsKey(float key) {
+        return get(key) != null;
+    }
+
+    /*
+     * Maps key to value. Returns the previous value, or null if key wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(float key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("value must not be null");
+
+        while (true) {
+            var result = attemptPut(key, value, holder, 1, 0);
+            if (result != RETRY)
+                return (V) result;
+        }
+    }
+
+    /*
+     * Removes key. Returns its value, or null if it wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(float key) {
+        while (true) {
+            var result = attemptRemove(key, holder, 1, 0);
+            if (result != RETRY)
+                return (V) result;
+        }
+    }
+
+    /*
+     * The largest key <= key, or null if there's none
+     */
+    public Float floorKey(float key) {
+        return nearestKey(key, true);
+    }
+
+    /*
+     * The smallest key >= key, or null if there's none
+     */
+    public Float ceilingKey(float key) {
+        return nearestKey(key, false);
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private static boolean isChanging(long version) {
+        return (version & CHANGING) != 0;
+    }
+
+    private static boolean isUnlinked(long version) {
+        return version == UNLINKED;
+    }
+
+    private static long beginChange(long version) {
+        return version | CHANGING;
+    }
+
+    private static long endChange(long version) {
+        return (version & ~CHANGING) + VERSION_STEP;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /*
+     * Waits until the rotation moving node is done: it spins for a bit, then waits for the lock that the
+     * rotation holds
+     */
+    private static void waitUntilNotChanging(Node<?> node) {
+        long version = node.version;
+        if (!isChanging(version)) return;
+
+        for (int i = 0; i < SPINS; i++) {
+            if (node.version != version) return;
+            Thread.onSpinWait();
+        }
+
+        synchronized (node) {
+            // Nothing to do, the rotation released the lock
+        }
+    }
+
+    /*
+     * Looks for key in the subtree on side dir of node (-1 left, 1 right), where nodeVersion is the version
+     * of node that was seen when deciding to go there. Returns the value, null, or RETRY if node has been
+     * moved since, in which case the caller has to look at its own child again
+     */
+    private Object attemptGet(float key, Node<V> node, int dir, long nodeVersion) {
+        while (true) {
+            var child = node.child(dir);
+            if (node.version != nodeVersion) return RETRY;
+            if (child == null) return null;
+
+            int nextDir = Float.compare(key, child.key);
+            if (nextDir == 0) return child.value;
+
+            long childVersion = child.version;
+            if (isChanging(childVersion)) {
+                waitUntilNotChanging(child);
+            }
+            else if (!isUnlinked(childVersion) && child == node.child(dir)) {
+                if (node.version != nodeVersion) return RETRY;
+
+                var result = attemptGet(key, child, nextDir, childVersion);
+                if (result != RETRY) return result;
+            }
+        }
+    }
+
+    private Object attemptPut(float key, V value, Node<V> node, int dir, long nodeVersion) {
+        while (true) {
+            var child = node.child(dir);
+            if (node.version != nodeVersion) return RETRY;
+
+            if (child == null) {
+                Node<V> damaged;
+                synchronized (node) {
+                    // Holding node's lock, nothing can move it anymore, so this is the last check needed
+                    if (node.version != nodeVersion) return RETRY;
+
+                    // Lost a race with another insert at the same spot; look again
+                    if (node.child(dir) != null) continue;
+
+                    node.setChild(dir, new Node<>(key, value, node));
+                    damaged = fixHeight(node);
+                }
+
+                size.increment();
+                fixHeightAndRebalance(damaged);
+                return null;
+            }
+
+            int nextDir = Float.compare(key, child.key);
+            if (nextDir == 0) {
+                var result = attemptUpdate(child, value);
+                if (result != RETRY) return result;
+                continue;
+            }
+
+            long childVersion = child.version;
+            if (isChanging(childVersion)) {
+                waitUntilNotChanging(child);
+            }
+            else if (!isUnlinked(childVersion) && child == node.child(dir)) {
+                if (node.version != nodeVersion) return RETRY;
+
+                var result = attemptPut(key, value, child, nextDir, childVersion);
+                if (result != RETRY) return result;
+            }
+        }
+    }
+
+    /*
+     * Sets the value of an existing node (which may be a routing node)
+     */
+    private Object attemptUpdate(Node<V> node, V value) {
+        V previous;
+        synchronized (node) {
+            if (isUnlinked(node.version)) return RETRY;
+
+            previous = node.value;
+            node.value = value;
+        }
+
+        if (previous == null)
+            size.increment();
+        return previous;
+    }
+
+    private Object attemptRemove(float key, Node<V> node, int dir, long nodeVersion) {
+        while (true) {
+            var child = node.child(dir);
+            if (node.version != nodeVersion) return RETRY;
+            if (child == null) return null;
+
+            int nextDir = Float.compare(key, child.key);
+            if (nextDir == 0) {
+                var result = attemptRemoveNode(node, child);
+                if (result != RETRY) return result;
+                continue;
+            }
+
+            long childVersion = child.version;
+            if (isChanging(childVersion)) {
+                waitUntilNotChanging(child);
+            }
+            else if (!isUnlinked(childVersion) && child == node.child(dir)) {
+                if (node.version != nodeVersion) return RETRY;
+
+                var result = attemptRemove(key, child, nextDir, childVersion);
+                if (result != RETRY) return result;
+            }
+        }
+    }
+
+    /*
+     * Removes the value of node, a child of parent. node is unlinked if it has at most one child,
+     * or else turned into a routing node
+     */
+    private Object attemptRemoveNode(Node<V> parent, Node<V> node) {
+        if (node.value == null) return null;
+
+        V previous;
+        if (node.left == null || node.right == null) {
+            Node<V> damaged;
+            synchronized (parent) {
+                if (isUnlinked(parent.version) || node.parent != parent) return RETRY;
+
+                synchronized (node) {
+                    previous = node.value;
+                    if (previous == null) return null;
+
+                    // node got a second child in the meantime
+                    if (!attemptUnlink(parent, node)) return RETRY;
+                }
+                damaged = fixHeight(parent);
+            }
+            fixHeightAndRebalance(damaged);
+        }
+        else {
+            synchronized (node) {
+                if (isUnlinked(node.version)) return RETRY;
+
+                previous = node.value;
+                node.value = null;
+            }
+
+            // It may have lost a child since, in which case it can be unlinked now
+            if (node.left == null || node.right == null)
+                fixHeightAndRebalance(node);
+        }
+
+        if (previous != null)
+            size.decrement();
+        return previous;
+    }
+
+    /*
+     * Replaces node by its only child (or nothing). parent and node must be locked.
+     * Returns false if node has two children or isn't parent's child anymore
+     */
+    private boolean attemptUnlink(Node<V> parent, Node<V> node) {
+        var parentLeft = parent.left;
+        var parentRight = parent.right;
+        if (parentLeft != node && parentRight != node) return false;
+
+        var left = node.left;
+        var right = node.right;
+        if (left != null && right != null) return false;
+
+        var splice = left != null ? left : right;
+        if (parentLeft == node)
+            parent.left = splice;
+        else
+            parent.right = splice;
+        if (splice != null)
+            splice.parent = parent;
+
+        node.version = UNLINKED;
+        node.value = null;
+        return true;
+    }
+
+    /*
+     * The floor (below) or ceiling of key. Finds the nearest node, and if it turns out to be a routing node,
+     * looks again for the nearest node strictly beyond it
+     */
+    private Float nearestKey(float key, boolean below) {
+        float bound = key;
+        boolean inclusive = true;
+
+        while (true) {
+            Node<?> nearest;
+            do {
+                nearest = attemptNearest(bound, below, inclusive, holder, 1, 0, null);
+            } while (nearest == RETRY_NODE);
+
+            if (nearest == null) return null;
+            if (nearest.value != null) return nearest.key;
+
+            bound = nearest.key;
+            inclusive = false;
+        }
+    }
+
+    /*
+     * Like attemptGet, but looks for the node with the largest key < bound (the smallest > bound if !below),
+     * or == bound if inclusive. best is the nearest node seen on the way down so far
+     */
+    private Node<?> attemptNearest(float bound, boolean below, boolean inclusive, Node<V> node, int dir,
+            long nodeVersion, Node<V> best) {
+        while (true) {
+            var child = node.child(dir);
+            if (node.version != nodeVersion) return RETRY_NODE;
+            if (child == null) return best;
+
+            int cmp = Float.compare(child.key, bound);
+            if (cmp == 0 && inclusive) return child;
+
+            boolean qualifies = below ? cmp < 0 : cmp > 0;
+            int nextDir = qualifies == below ? 1 : -1;
+
+            long childVersion = child.version;
+            if (isChanging(childVersion)) {
+                waitUntilNotChanging(child);
+            }
+            else if (!isUnlinked(childVersion) && child == node.child(dir)) {
+                if (node.version != nodeVersion) return RETRY_NODE;
+
+                var result = attemptNearest(bound, below, inclusive, child, nextDir, childVersion,
+                        qualifies ? child : best);
+                if (result != RETRY_NODE) return result;
+            }
+        }
+    }
+
+    /*
+     * What node needs: to be unlinked (a routing node with at most one child), to be rotated,
+     * nothing, or just a new height, which is returned
+     */
+    private int nodeCondition(Node<V> node) {
+        var left = node.left;
+        var right = node.right;
+        if ((left == null || right == null) && node.value == null)
+            return UNLINK_REQUIRED;
+
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int balance = leftHeight - rightHeight;
+        if (balance < -1 || balance > 1)
+            return REBALANCE_REQUIRED;
+
+        int newHeight = 1 + Math.max(leftHeight, rightHeight);
+        return node.height != newHeight ? newHeight : NOTHING_REQUIRED;
+    }
+
+    /*
+     * Repairs node and its ancestors, one at a time, until there's nothing left to repair.
+     *
+     * A rotation can hand the repair down to a node it moved, or leave node unbalanced and rotate a child
+     * first. The nodes above it are then remembered and looked at again once the lower repair is done, since
+     * their heights may be stale
+     */
+    private void fixHeightAndRebalance(Node<V> node) {
+        ArrayDeque<Node<V>> revisit = null;
+
+        while (true) {
+            if (node == null || node.parent == null || isUnlinked(node.version)) {
+                if (revisit == null || revisit.isEmpty()) return;
+                node = revisit.pop();
+                continue;
+            }
+
+            int condition = nodeCondition(node);
+            if (condition == NOTHING_REQUIRED) {
+                node = null;
+            }
+            else if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = fixHeight(node);
+                }
+            }
+            else {
+                var parent = node.parent;
+                synchronized (parent) {
+                    if (!isUnlinked(parent.version) && node.parent == parent) {
+                        Node<V> next;
+                        synchronized (node) {
+                            next = rebalance(parent, node);
+                        }
+
+                        // Unless it's a retry of node, or the repair already moved on to parent
+                        boolean rotated = node.parent != parent;
+                        if (next != null && next != parent && next != parent.parent && (rotated || next != node)) {
+                            if (revisit == null)
+                                revisit = new ArrayDeque<>();
+                            revisit.push(parent);
+                            // node wasn't rotated, only a child of it was
+                            if (!rotated)
+                                revisit.push(node);
+                        }
+                        node = next;
+                    }
+                    // Otherwise node moved, try again
+                }
+            }
+        }
+    }
+
+    /*
+     * Updates the height of node, which must be locked. Returns the next node to repair: node itself if it
+     * needs more than a height update, its parent if its height changed, or null
+     */
+    private Node<V> fixHeight(Node<V> node) {
+        int condition = nodeCondition(node);
+        switch (condition) {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                return node;
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                return node.parent;
+        }
+    }
+
+    /*
+     * Unlinks, rotates or updates the height of node. parent and node must be locked.
+     * Returns the next node to repair
+     */
+    private Node<V> rebalance(Node<V> parent, Node<V> node) {
+        var left = node.left;
+        var right = node.right;
+
+        if ((left == null || right == null) && node.value == null) {
+            if (attemptUnlink(parent, node))
+                return fixHeight(parent);
+            return node;
+        }
+
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int balance = leftHeight - rightHeight;
+
+        if (balance > 1)
+            return rebalanceToRight(parent, node, left, rightHeight);
+        if (balance < -1)
+            return rebalanceToLeft(parent, node, right, leftHeight);
+
+        int newHeight = 1 + Math.max(leftHeight, rightHeight);
+        if (newHeight != node.height) {
+            node.height = newHeight;
+            return fixHeight(parent);
+        }
+        return null;
+    }
+
+    /*
+     * node is left-heavy: rotates it right, or its left child left and then it right
+     */
+    private Node<V> rebalanceToRight(Node<V> parent, Node<V> node, Node<V> left, int rightHeight) {
+        synchronized (left) {
+            int leftHeight = left.height;
+            if (leftHeight - rightHeight <= 1) return node;
+
+            var leftRight = left.right;
+            int leftLeftHeight = height(left.left);
+            int leftRightHeight = height(leftRight);
+            if (leftLeftHeight >= leftRightHeight)
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+
+            synchronized (leftRight) {
+                leftRightHeight = leftRight.height;
+                if (leftLeftHeight >= leftRightHeight)
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+
+                int leftRightLeftHeight = height(leftRight.left);
+                int balance = leftLeftHeight - leftRightLeftHeight;
+                if (balance >= -1 && balance <= 1)
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight,
+                            leftRightLeftHeight);
+            }
+
+            // A double rotation would leave left out of balance; rotating left first and coming back later
+            return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+    /*
+     * node is right-heavy: rotates it left, or its right child right and then it left
+     */
+    private Node<V> rebalanceToLeft(Node<V> parent, Node<V> node, Node<V> right, int leftHeight) {
+        synchronized (right) {
+            int rightHeight = right.height;
+            if (leftHeight - rightHeight >= -1) return node;
+
+            var rightLeft = right.left;
+            int rightLeftHeight = height(rightLeft);
+            int rightRightHeight = height(right.right);
+            if (rightRightHeight >= rightLeftHeight)
+                return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+
+            synchronized (rightLeft) {
+                rightLeftHeight = rightLeft.height;
+                if (rightRightHeight >= rightLeftHeight)
+                    return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+
+                int rightLeftRightHeight = height(rightLeft.right);
+                int balance = rightRightHeight - rightLeftRightHeight;
+                if (balance >= -1 && balance <= 1)
+                    return rotateLeftOverRight(parent, node, leftHeight, right, rightLeft, rightRightHeight,
+                            rightLeftRightHeight);
+            }
+
+            return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+    /*
+     * Replaces child by newChild under parent
+     */
+    private void replaceChild(Node<V> parent, Node<V> child, Node<V> newChild) {
+        if (parent.left == child)
+            parent.left = newChild;
+        else
+            parent.right = newChild;
+        newChild.parent = parent;
+    }
+
+    /*
+     * After a rotation, returns the node that still needs repairing: one the rotation left unbalanced,
+     * a routing node it left with one child, or else the parent, whose height may have changed
+     */
+    private Node<V> afterRotation(Node<V> parent, Node<V> lowered, int loweredBalance, boolean loweredCanUnlink,
+            Node<V> raised, int raisedBalance, boolean raisedCanUnlink) {
+        if (loweredBalance < -1 || loweredBalance > 1 || loweredCanUnlink) return lowered;
+        if (raisedBalance < -1 || raisedBalance > 1 || raisedCanUnlink) return raised;
+        return fixHeight(parent);
+    }
+
+    private Node<V> rotateRight(Node<V> parent, Node<V> node, Node<V> left, int rightHeight, int leftLeftHeight,
+            Node<V> leftRight, int leftRightHeight) {
+        long nodeVersion = node.version;
+        node.version = beginChange(nodeVersion);
+
+        node.left = leftRight;
+        if (leftRight != null)
+            leftRight.parent = node;
+        left.right = node;
+        node.parent = left;
+        replaceChild(parent, node, left);
+
+        int newNodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+        node.height = newNodeHeight;
+        left.height = 1 + Math.max(leftLeftHeight, newNodeHeight);
+
+        node.version = endChange(nodeVersion);
+
+        return afterRotation(parent,
+                node, leftRightHeight - rightHeight,
+                (leftRight == null || rightHeight == 0) && node.value == null,
+                left, leftLeftHeight - newNodeHeight,
+                leftLeftHeight == 0 && left.value == null);
+    }
+
+    private Node<V> rotateLeft(Node<V> parent, Node<V> node, int leftHeight, Node<V> right, Node<V> rightLeft,
+            int rightLeftHeight, int rightRightHeight) {
+        long nodeVersion = node.version;
+        node.version = beginChange(nodeVersion);
+
+        node.right = rightLeft;
+        if (rightLeft != null)
+            rightLeft.parent = node;
+        right.left = node;
+        node.parent = right;
+        replaceChild(parent, node, right);
+
+        int newNodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+        node.height = newNodeHeight;
+        right.height = 1 + Math.max(newNodeHeight, rightRightHeight);
+
+        node.version = endChange(nodeVersion);
+
+        return afterRotation(parent,
+                node, rightLeftHeight - leftHeight,
+                (rightLeft == null || leftHeight == 0) && node.value == null,
+                right, rightRightHeight - newNodeHeight,
+                rightRightHeight == 0 && right.value == null);
+    }
+
+    /*
+     * Rotates left left and then node right, making leftRight the root of the subtree. Both node and left
+     * move down (their subtrees lose keys), so both get a new version
+     */
+    private Node<V> rotateRightOverLeft(Node<V> parent, Node<V> node, Node<V> left, int rightHeight,
+            int leftLeftHeight, Node<V> leftRight, int leftRightLeftHeight) {
+        long nodeVersion = node.version;
+        long leftVersion = left.version;
+
+        var leftRightLeft = leftRight.left;
+        var leftRightRight = leftRight.right;
+        int leftRightRightHeight = height(leftRightRight);
+
+        node.version = beginChange(nodeVersion);
+        left.version = beginChange(leftVersion);
+
+        node.left = leftRightRight;
+        if (leftRightRight != null)
+            leftRightRight.parent = node;
+        left.right = leftRightLeft;
+        if (leftRightLeft != null)
+            leftRightLeft.parent = left;
+        leftRight.left = left;
+        left.parent = leftRight;
+        leftRight.right = node;
+        node.parent = leftRight;
+        replaceChild(parent, node, leftRight);
+
+        int newNodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+        node.height = newNodeHeight;
+        int newLeftHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+        left.height = newLeftHeight;
+        leftRight.height = 1 + Math.max(newLeftHeight, newNodeHeight);
+
+        node.version = endChange(nodeVersion);
+        left.version = endChange(leftVersion);
+
+        // left may be a routing node that was left with one child. It and its new parent are both locked,
+        // so it's unlinked right away
+        if (left.value == null && (left.left == null || left.right == null) && attemptUnlink(leftRight, left)) {
+            newLeftHeight = height(leftRight.left);
+            leftRight.height = 1 + Math.max(newLeftHeight, newNodeHeight);
+        }
+
+        return afterRotation(parent,
+                node, leftRightRightHeight - rightHeight,
+                (leftRightRight == null || rightHeight == 0) && node.value == null,
+                leftRight, newLeftHeight - newNodeHeight, false);
+    }
+
+    private Node<V> rotateLeftOverRight(Node<V> parent, Node<V> node, int leftHeight, Node<V> right,
+            Node<V> rightLeft, int rightRightHeight, int rightLeftRightHeight) {
+        long nodeVersion = node.version;
+        long rightVersion = right.version;
+
+        var rightLeftLeft = rightLeft.left;
+        var rightLeftRight = rightLeft.right;
+        int rightLeftLeftHeight = height(rightLeftLeft);
+
+        node.version = beginChange(nodeVersion);
+        right.version = beginChange(rightVersion);
+
+        node.right = rightLeftLeft;
+        if (rightLeftLeft != null)
+            rightLeftLeft.parent = node;
+        right.left = rightLeftRight;
+        if (rightLeftRight != null)
+            rightLeftRight.parent = right;
+        rightLeft.right = right;
+        right.parent = rightLeft;
+        rightLeft.left = node;
+        node.parent = rightLeft;
+        replaceChild(parent, node, rightLeft);
+
+        int newNodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+        node.height = newNodeHeight;
+        int newRightHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+        right.height = newRightHeight;
+        rightLeft.height = 1 + Math.max(newNodeHeight, newRightHeight);
+
+        node.version = endChange(nodeVersion);
+        right.version = endChange(rightVersion);
+
+        if (right.value == null && (right.left == null || right.right == null) && attemptUnlink(rightLeft, right)) {
+            newRightHeight = height(rightLeft.right);
+            rightLeft.height = 1 + Math.max(newNodeHeight, newRightHeight);
+        }
+
+        return afterRotation(parent,
+                node, rightLeftLeftHeight - leftHeight,
+                (rightLeftLeft == null || leftHeight == 0) && node.value == null,
+                rightLeft, newRightHeight - newNodeHeight, false);
+    }
+
+    /*
+     * Every field that readers look at without a lock is volatile. Writers change a node only while
+     * holding its lock
+     */
+    private static class Node<V> {
+        final float key;
+        volatile int height = 1;
+        volatile long version = 0;
+        volatile V value;
+        volatile Node<V> parent;
+        volatile Node<V> left;
+        volatile Node<V> right;
+
+        Node(float key, V value, Node<V> parent) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+        }
+
+        Node<V> child(int dir) {
+            return dir < 0 ? left : right;
+        }
+
+        void setChild(int dir, Node<V> child) {
+            if (dir < 0)
+                left = child;
+            else
+                right = child;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A priority queue that many threads can share, made of several BinaryHeap shards that each have their own lock
+ * (a "MultiQueue").
+ *
+ * insert puts the value into a random shard. poll looks at the tops of a few random shards (2 by default) and
+ * takes from the best one. Threads rarely want the same shard at the same time, so throughput grows with the
+ * number of threads instead of everyone queueing on a single lock.
+ *
+ * The price is that poll is relaxed: it returns one of the best elements, not necessarily the best one. With
+ * c shards per thread and 2 choices the polled element is, on average, within O(shards) ranks of the true top.
+ * More shards means less contention and a larger rank error; more choices means a smaller rank error and
+ * more shards to look at per poll.
+ *
+ * ConcurrentMultiQueue.strict() instead gives an exact priority queue backed by a lock-free skip list.
+ * It boxes every entry, but never blocks.
+ */
+public class ConcurrentMultiQueue {
+    // How many busy shards poll runs into before it blocks on one
+    private static final int MAX_FAILED_LOCKS = 8;
+
+    private final boolean isMinHeap;
+
+    // Relaxed mode
+    private final Shard[] shards;
+    private final int choices;
+
+    // Strict mode
+    private final ConcurrentSkipListSet<Long> skipList;
+    private final AtomicInteger sequence;
+
+    private final LongAdder size = new LongAdder();
+
+    /*
+     * A relaxed max queue with 2 shards per thread and 2 choices per poll
+     */
+    public ConcurrentMultiQueue(int threads) {
+        this(2 * threads, 2, false);
+    }
+
+    /*
+     * - shardCount: how many BinaryHeap shards there are. A few per thread works well
+     * - choices: how many random shards poll compares, at least 1
+     * - isMinHeap: poll returns the smallest elements instead of the largest
+     */
+    public ConcurrentMultiQueue(int shardCount, int choices, boolean isMinHeap) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        if (choices < 1)
+            throw new IllegalArgumentException("choices must be at least 1");
+
+        this.isMinHeap = isMinHeap;
+        this.choices = choices;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new Shard(isMinHeap);
+
+        this.skipList = null;
+        this.sequence = null;
+    }
+
+    private ConcurrentMultiQueue(boolean isMinHeap) {
+        this.isMinHeap = isMinHeap;
+        this.shards = null;
+        this.choices = 0;
+        this.skipList = new ConcurrentSkipListSet<>();
+        this.sequence = new AtomicInteger();
+    }
+
+    /*
+     * An exact, lock-free queue. Every entry is a Long packing the value (high 32 bits) with an insertion
+     * sequence number (low 32 bits), which keeps equal values apart in the set
+     */
+    public static ConcurrentMultiQueue strict(boolean isMinHeap) {
+        return new ConcurrentMultiQueue(isMinHeap);
+    }
+
+    public void insert(int val) {
+        size.increment();
+
+        if (skipList != null) {
+            // The sequence number wraps around after 2^32 inserts, so an equal value can still be queued with
+            // the same one. add rejects the duplicate, and the next sequence number is tried instead
+            boolean added;
+            do {
+                added = skipList.add(((long) val << 32) | (sequence.getAndIncrement() & 0xFFFFFFFFL));
+            } while (!added);
+            return;
+        }
+
+        var random = ThreadLocalRandom.current();
+
+        // Trying random shards until one isn't busy; after a few misses, just wait for the last one
+        var shard = shards[random.nextInt(shards.length)];
+        for (int attempts = 1; !shard.lock.tryLock(); attempts++) {
+            if (attempts >= shards.length) {
+                shard.lock.lock();
+                break;
+            }
+            shard = shards[random.nextInt(shards.length)];
+        }
+
+        try {
+            shard.heap.insert(val);
+            shard.publishTop();
+        }
+        finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /*
+     * Removes and returns one of the top elements, or an empty OptionalInt if the queue is empty.
+     * In relaxed mode an element inserted concurrently might not be seen yet
+     */
+    public OptionalInt poll() {
+        if (skipList != null) {
+            var entry = isMinHeap ? skipList.pollFirst() : skipList.pollLast();
+            if (entry == null) return OptionalInt.empty();
+
+            size.decrement();
+            return OptionalInt.of((int) (entry >> 32));
+        }
+
+        var random = ThreadLocalRandom.current();
+        int failedLocks = 0;
+
+        while (true) {
+            // Comparing the published tops of a few random shards without locking them
+            Shard best = null;
+            for (int i = 0; i < choices; i++) {
+                var shard = shards[random.nextInt(shards.length)];
+                if (shard.isEmpty) continue;
+                if (best == null || comesBefore(shard.top, best.top))
+                    best = shard;
+            }
+
+            if (best == null) {
+                best = findNonEmptyShard();
+                if (best == null) return OptionalInt.empty();
+            }
+
+            // A busy shard is usually busy with another poll, so it's worth picking other shards a few times.
+            // After that, the poll waits for the shard it picked rather than spinning on and on
+            if (!best.lock.tryLock()) {
+                failedLocks++;
+                if (failedLocks < MAX_FAILED_LOCKS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                best.lock.lock();
+                failedLocks = 0;
+            }
+
+            try {
+                // Someone else may have emptied it since its top was published
+                if (best.heap.size() == 0) continue;
+
+                int val = best.heap.poll();
+                best.publishTop();
+                size.decrement();
+                return OptionalInt.of(val);
+            }
+            finally {
+                best.lock.unlock();
+            }
+        }
+    }
+
+    /*
+     * The number of elements, exact only while no other thread is inserting or polling
+     */
+    public long size() {
+        return size.sum();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private boolean comesBefore(int a, int b) {
+        return isMinHeap ? a < b : a > b;
+    }
+
+    /*
+     * Falls back to looking at every shard, for when the random ones all looked empty
+     */
+    private Shard findNonEmptyShard() {
+        Shard best = null;
+        for (var shard : shards) {
+            if (shard.isEmpty) continue;
+            if (best == null || comesBefore(shard.top, best.top))
+                best = shard;
+        }
+        return best;
+    }
+
+    /*
+     * A heap plus its lock. top and isEmpty mirror the heap's root and are written only while holding the lock,
+     * so poll can compare shards without locking them.
+     *
+     * Every poll reads other shards' top and isEmpty, so they're padded with 128 bytes (two cache lines, since
+     * CPUs often fetch lines in pairs) on both sides. Otherwise they'd share a cache line with the neighbouring
+     * objects, such as the previous shard's heap array, and every write to those would invalidate them.
+     * The JVM lays out a superclass's fields before its subclass's, so the padding goes in the classes around
+     * ShardFields (@Contended would do this, but outside the JDK it needs -XX:-RestrictContended)
+     */
+    private static class Shard extends ShardFields {
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+        long p18, p19, p1a, p1b, p1c, p1d, p1e, p1f;
+
+        Shard(boolean isMinHeap) {
+            super(isMinHeap);
+        }
+    }
+
+    private static class ShardPadding {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+        long p08, p09, p0a, p0b, p0c, p0d, p0e, p0f;
+    }
+
+    private static class ShardFields extends ShardPadding {
+        final ReentrantLock lock = new ReentrantLock();
+        final BinaryHeap heap;
+
+        volatile int top;
+        volatile boolean isEmpty = true;
+
+        ShardFields(boolean isMinHeap) {
+            heap = new BinaryHeap(16, 4, isMinHeap);
+        }
+
+        void publishTop() {
+            if (heap.size() == 0) {
+                isEmpty = true;
+            }
+            else {
+                top = heap.peek();
+                isEmpty = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * An external merge sort for binary files of ints that are too big to fit in memory.
+ *
+ * It works in 2 phases:
+ * 1. The input is read in chunks that fit the memory budget. Each chunk is sorted in memory with
+ *    SortingAlgos.introSort and spilled to a temp file as a sorted run. The chunk is read and written through
+ *    one mapped window each, and the chunk is sized so that the int[] plus those 2 windows fit the budget.
+ * 2. The runs are k-way merged with a min heap, at most mergeFanIn runs at a time. If there are more runs
+ *    than that, the merge takes several passes, each one producing fewer and longer runs.
+ *
+ * All file I/O goes through memory-mapped windows of the files, so reading and writing is sequential and
+ * doesn't copy through intermediate byte[] buffers. Each window is unmapped (with BufferCleaner, like
+ * OffHeapBinaryHeap's pages) as soon as it's used up, so only k + 1 windows are mapped at a time while merging
+ * k runs, and a temp file is no longer mapped when it's deleted. If BufferCleaner can't unmap them, the windows
+ * are left for the GC.
+ *
+ * Every file is a sequence of 4-byte ints in the given byte order (big-endian by default, which is what
+ * DataOutputStream writes).
+ */
+public class ExternalSorter {
+    private static final int INT_BYTES = Integer.BYTES;
+
+    // Mapped windows are never made smaller than this, no matter how high the fan-in is
+    private static final int MIN_WINDOW_BYTES = 64 * 1024;
+
+    // The smallest budget that still leaves room for a chunk next to its 2 windows in the first phase
+    private static final long MIN_BUDGET_BYTES = 4L * MIN_WINDOW_BYTES;
+
+    private final long memoryBudgetBytes;
+    private final int mergeFanIn;
+    private final Path tmpDir;
+    private final ByteOrder byteOrder;
+
+    /*
+     * - memoryBudgetBytes: roughly how much memory a sort may use, for the in-memory chunk and its 2 mapped
+     *                      windows during the first phase and for all the mapped windows during the merge
+     * - mergeFanIn: the most runs merged at once
+     */
+    public ExternalSorter(long memoryBudgetBytes, int mergeFanIn) {
+        this(memoryBudgetBytes, mergeFanIn, Path.of(System.getProperty("java.io.tmpdir")), ByteOrder.BIG_ENDIAN);
+    }
+
+    public ExternalSorter(long memoryBudgetBytes, int mergeFanIn, Path tmpDir, ByteOrder byteOrder) {
+        if (memoryBudgetBytes < MIN_BUDGET_BYTES)
+            throw new IllegalArgumentException("memoryBudgetBytes must be at least " + MIN_BUDGET_BYTES);
+        if (mergeFanIn < 2)
+            throw new IllegalArgumentException("mergeFanIn must be at least 2");
+
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.mergeFanIn = mergeFanIn;
+        this.tmpDir = tmpDir;
+        this.byteOrder = byteOrder;
+    }
+
+    /*
+     * Sorts the ints in input and writes them to output. input is left untouched
+     */
+    public void sort(Path input, Path output) throws IOException {
+        var runs = new ArrayList<Path>();
+
+        // Every temp file this sort has created, so they're all deleted even if a merge pass fails halfway
+        var tempFiles = new ArrayList<Path>();
+
+        try {
+            RunReader reader = null;
+            try (var in = FileChannel.open(input, StandardOpenOption.READ)) {
+                long size = in.size();
+                if (size % INT_BYTES != 0)
+                    throw new IllegalArgumentException(input + " doesn't hold a whole number of ints");
+
+                // The whole input is read front to back through one reader, a chunk at a time
+                reader = new RunReader(in, chunkWindowBytes());
+
+                // Everything fits in a single chunk, so there's nothing to merge
+                if (size <= chunkBytes()) {
+                    writeSortedChunk(reader, new int[(int) (size / INT_BYTES)], output);
+                    return;
+                }
+
+                int[] chunk = null;
+                for (long pos = 0; pos < size; pos += chunkBytes()) {
+                    // Every chunk but the last one has the same length, so their array is reused
+                    int length = (int) (Math.min(chunkBytes(), size - pos) / INT_BYTES);
+                    if (chunk == null || chunk.length != length)
+                        chunk = new int[length];
+
+                    var run = Files.createTempFile(tmpDir, "run", ".bin");
+                    tempFiles.add(run);
+                    runs.add(run);
+                    writeSortedChunk(reader, chunk, run);
+                }
+            }
+            finally {
+                if (reader != null)
+                    reader.release();
+            }
+
+            // Merging passes: each one merges groups of mergeFanIn runs into one, until only a final merge is left
+            while (runs.size() > mergeFanIn) {
+                var nextRuns = new ArrayList<Path>();
+                for (int i = 0; i < runs.size(); i += mergeFanIn) {
+                    var group = runs.subList(i, Math.min(i + mergeFanIn, runs.size()));
+                    var merged = Files.createTempFile(tmpDir, "run", ".bin");
+                    tempFiles.add(merged);
+                    nextRuns.add(merged);
+                    merge(group, merged);
+                    for (var run : group)
+                        Files.deleteIfExists(run);
+                }
+                runs = nextRuns;
+            }
+
+            merge(runs, output);
+        }
+        finally {
+            for (var tempFile : tempFiles)
+                Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * The bytes of input sorted in memory at once: whatever the budget has left after the chunk's read and
+     * write windows. Capped so the chunk fits in a single int[]
+     */
+    private long chunkBytes() {
+        long maxArrayBytes = (long) (Integer.MAX_VALUE - 8) * INT_BYTES;
+        long bytes = memoryBudgetBytes - 2L * chunkWindowBytes();
+        return Math.min(bytes, maxArrayBytes) / INT_BYTES * INT_BYTES;
+    }
+
+    /*
+     * The size of the read and write windows of the first phase. They only stream the chunk in and out,
+     * so they get a small slice of the budget and leave the rest to the chunk itself
+     */
+    private int chunkWindowBytes() {
+        long bytes = memoryBudgetBytes / 16 / INT_BYTES * INT_BYTES;
+        return (int) Math.max(MIN_WINDOW_BYTES, Math.min(bytes, Integer.MAX_VALUE / INT_BYTES * INT_BYTES));
+    }
+
+    /*
+     * The size of each mapped window when k runs are merged: the budget is split between
+     * the k input windows and the output window
+     */
+    private int windowBytes(int k) {
+        long bytes = memoryBudgetBytes / (k + 1) / INT_BYTES * INT_BYTES;
+        return (int) Math.max(MIN_WINDOW_BYTES, Math.min(bytes, Integer.MAX_VALUE / INT_BYTES * INT_BYTES));
+    }
+
+    /*
+     * Fills chunk with the next ints of reader, sorts them and writes them to dest
+     */
+    private void writeSortedChunk(RunReader reader, int[] chunk, Path dest) throws IOException {
+        reader.read(chunk);
+
+        SortingAlgos.introSort(chunk);
+
+        try (var out = openForWriting(dest)) {
+            var writer = new RunWriter(out, (long) chunk.length * INT_BYTES, chunkWindowBytes());
+            try {
+                writer.write(chunk);
+            }
+            finally {
+                writer.release();
+            }
+        }
+    }
+
+    /*
+     * k-way merges the sorted runs into dest.
+     * The heap holds the index of every run that still has elements, ordered by that run's current head
+     */
+    private void merge(List<Path> runs, Path dest) throws IOException {
+        int k = runs.size();
+        int window = windowBytes(k);
+
+        var channels = new FileChannel[k];
+        var readers = new RunReader[k];
+        RunWriter writer = null;
+        try (var out = openForWriting(dest)) {
+            for (int i = 0; i < k; i++) {
+                channels[i] = FileChannel.open(runs.get(i), StandardOpenOption.READ);
+                readers[i] = new RunReader(channels[i], window);
+            }
+
+            long totalBytes = 0;
+            for (var channel : channels)
+                totalBytes += channel.size();
+
+            var heads = new int[k];
+            var heap = new int[k];
+            int heapSize = 0;
+
+            for (int i = 0; i < k; i++) {
+                if (!readers[i].hasNext()) continue;
+                heads[i] = readers[i].next();
+                heap[heapSize] = i;
+                heapSize++;
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--)
+                siftDown(heap, heapSize, heads, i);
+
+            writer = new RunWriter(out, totalBytes, window);
+            while (heapSize > 0) {
+                int run = heap[0];
+                writer.write(heads[run]);
+
+                if (readers[run].hasNext()) {
+                    heads[run] = readers[run].next();
+                }
+                else {
+                    heapSize--;
+                    heap[0] = heap[heapSize];
+                }
+                siftDown(heap, heapSize, heads, 0);
+            }
+        }
+        finally {
+            if (writer != null)
+                writer.release();
+            for (var reader : readers) {
+                if (reader != null)
+                    reader.release();
+            }
+            for (var channel : channels) {
+                if (channel != null)
+                    channel.close();
+            }
+        }
+    }
+
+    /*
+     * Sifts down heap[i] in a min heap of run indexes keyed by heads[run]
+     */
+    private static void siftDown(int[] heap, int heapSize, int[] heads, int i) {
+        int run = heap[i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heads[heap[child + 1]] < heads[heap[child]])
+                child++;
+            if (heads[heap[child]] >= heads[run]) break;
+
+            heap[i] = heap[child];
+            i = child;
+        }
+
+        heap[i] = run;
+    }
+
+    private static FileChannel openForWriting(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /*
+     * Reads the ints of a file front to back through a sliding mapped window
+     */
+    private class RunReader {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowBytes;
+
+        private MappedByteBuffer window;
+        private long windowEnd = 0;
+
+        RunReader(FileChannel channel, int windowBytes) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowBytes = windowBytes;
+        }
+
+        boolean hasNext() {
+            return (window != null && window.hasRemaining()) || windowEnd < size;
+        }
+
+        int next() throws IOException {
+            if (window == null || !window.hasRemaining())
+                nextWindow();
+            return window.getInt();
+        }
+
+        /*
+         * Fills dest with the next dest.length ints, a window at a time. There must be that many left
+         */
+        void read(int[] dest) throws IOException {
+            int off = 0;
+            while (off < dest.length) {
+                if (window == null || !window.hasRemaining())
+                    nextWindow();
+                int n = Math.min(dest.length - off, window.remaining() / INT_BYTES);
+                window.asIntBuffer().get(dest, off, n);
+                window.position(window.position() + n * INT_BYTES);
+                off += n;
+            }
+        }
+
+        private void nextWindow() throws IOException {
+            if (windowEnd >= size)
+                throw new NoSuchElementException("Reading past the end of the file");
+            release();
+            long length = Math.min(windowBytes, size - windowEnd);
+            window = channel.map(MapMode.READ_ONLY, windowEnd, length);
+            window.order(byteOrder);
+            windowEnd += length;
+        }
+
+        /*
+         * Unmaps the current window. The reader can't be used after that
+         */
+        void release() {
+            BufferCleaner.free(window);
+            window = null;
+        }
+    }
+
+    /*
+     * Writes ints to a file front to back through a sliding mapped window.
+     * The total length is known up front so the last window is mapped at exactly the right size;
+     * mapping past the end of the file would grow it
+     */
+    private class RunWriter {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowBytes;
+
+        private MappedByteBuffer window;
+        private long windowEnd = 0;
+
+        RunWriter(FileChannel channel, long size, int windowBytes) {
+            this.channel = channel;
+            this.size = size;
+            this.windowBytes = windowBytes;
+        }
+
+        void write(int val) throws IOException {
+            if (window == null || !window.hasRemaining())
+                nextWindow();
+            window.putInt(val);
+        }
+
+        /*
+         * Writes all of src, a window at a time
+         */
+        void write(int[] src) throws IOException {
+            int off = 0;
+            while (off < src.length) {
+                if (window == null || !window.hasRemaining())
+                    nextWindow();
+                int n = Math.min(src.length - off, window.remaining() / INT_BYTES);
+                window.asIntBuffer().put(src, off, n);
+                window.position(window.position() + n * INT_BYTES);
+                off += n;
+            }
+        }
+
+        private void nextWindow() throws IOException {
+            release();
+            long length = Math.min(windowBytes, size - windowEnd);
+            window = channel.map(MapMode.READ_WRITE, windowEnd, length);
+            window.order(byteOrder);
+            windowEnd += length;
+        }
+
+        /*
+         * Unmaps the current window. What was written stays in the file; it's just no longer mapped
+         */
+        void release() {
+            BufferCleaner.free(window);
+            window = null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * An iterator over primitive floats, so iterating a float collection doesn't box every value into a Float.
+ * The JDK has PrimitiveIterator.OfInt, OfLong and OfDouble but nothing for floats
+ */
+public interface FloatIterator {
+    boolean hasNext();
+
+    /*
+     * Returns the next value. Throws NoSuchElementException if there's none
+     */
+    float nextFloat();
+}
@@ -96,7 +96,7 @@ public class GraphAlgos {
         for (var n : graph.keySet())
             dist.put(n, Integer.MAX_VALUE);
 
-        dist.put(0, 0);
+        dist.put(source, 0);
 
         // Represents the nodes that have been removed from the priority queue
         var processed = new HashSet<Integer>();
@@ -133,6 +133,49 @@ public class GraphAlgos {
         return dist;
     }
 
+    /*
+     * Dijkstra's algorithm with a monotone queue (a RadixHeap, or a BucketQueue when the edge weights are small)
+     * instead of a PriorityQueue of boxed pairs. Dijkstra only ever polls distances in non-decreasing order,
+     * which is all those queues need. The queue must be empty; it's left empty.
+     *
+     * A node can be in the queue several times, once per time its distance improved. Only the entry with its
+     * final distance is expanded, the others are skipped when they're polled
+     */
+    public static HashMap<Integer, Integer> getShortestPathsDijkstra(HashMap<Integer, HashMap<Integer, Integer>> graph,
+            int source, MonotoneQueue pq) {
+        if (!pq.isEmpty())
+            throw new IllegalArgumentException("The queue must be empty");
+        pq.clear();
+
+        var dist = new HashMap<Integer, Integer>();
+        for (var n : graph.keySet())
+            dist.put(n, Integer.MAX_VALUE);
+
+        dist.put(source, 0);
+        pq.insert(0, source);
+
+        while (!pq.isEmpty()) {
+            var nodeDist = pq.peekKey();
+            var node = pq.poll();
+
+            // A stale entry: node has been reached by a shorter path since
+            if (nodeDist > dist.get(node))
+                continue;
+
+            for (var neighborAndWeight : graph.get(node).entrySet()) {
+                var neighbor = neighborAndWeight.getKey();
+                var altNeighborDist = nodeDist + neighborAndWeight.getValue();
+
+                if (altNeighborDist < dist.get(neighbor)) {
+                    dist.put(neighbor, (int) altNeighborDist);
+                    pq.insert(altNeighborDist, neighbor);
+                }
+            }
+        }
+
+        return dist;
+    }
+
     private class Pair<K, V extends Comparable<V>> implements Comparable<Pair<K, V>> {
         public K key;
         public V value;
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/*
+ * Sorts ints that arrive in batches, without having to concatenate them first.
+ *
+ * Every batch is sorted as soon as it arrives, on the given executor if there is one so that sorting overlaps
+ * with whatever is producing the batches. Batches smaller than runSize are collected into a pending buffer first,
+ * so lots of tiny batches don't turn into lots of tiny runs.
+ *
+ * Once everything has been added, sortedIterator() or drainTo() merge the sorted runs lazily with a loser tree:
+ * each element costs about log2(number of runs) comparisons and nothing is allocated per element.
+ *
+ * A sorter is filled by a single thread, and can only be read once.
+ */
+public class IncrementalSorter {
+    public static final int DEFAULT_RUN_SIZE = 1 << 16;
+
+    private final ExecutorService executor;
+    private final int runSize;
+
+    private final ArrayList<Future<int[]>> runs = new ArrayList<>();
+
+    private int[] pending;
+    private int pendingSize = 0;
+
+    private long size = 0;
+    private boolean read = false;
+
+    /*
+     * Sorts every batch on the calling thread
+     */
+    public IncrementalSorter() {
+        this(null, DEFAULT_RUN_SIZE);
+    }
+
+    /*
+     * - executor: where the batches are sorted, or null to sort them on the calling thread.
+     *             The sorter doesn't shut it down
+     * - runSize: batches smaller than this are buffered together until they add up to this many elements
+     */
+    public IncrementalSorter(ExecutorService executor, int runSize) {
+        if (runSize < 1)
+            throw new IllegalArgumentException("runSize must be at least 1");
+
+        this.executor = executor;
+        this.runSize = runSize;
+        this.pending = new int[runSize];
+    }
+
+    /*
+     * Adds a batch. The batch is copied, so the caller is free to reuse it afterwards
+     */
+    public void add(int[] batch) {
+        checkNotRead();
+
+        if (batch.length >= runSize) {
+            submit(batch.clone());
+        }
+        else {
+            int copied = 0;
+            while (copied < batch.length) {
+                int count = Math.min(batch.length - copied, runSize - pendingSize);
+                System.arraycopy(batch, copied, pending, pendingSize, count);
+                pendingSize += count;
+                copied += count;
+
+                if (pendingSize == runSize)
+                    flushPending();
+            }
+        }
+
+        size += batch.length;
+    }
+
+    /*
+     * Adds every element of the stream
+     */
+    public void addAll(IntStream stream) {
+        checkNotRead();
+
+        stream.sequential().forEach(e -> {
+            pending[pendingSize++] = e;
+            size++;
+            if (pendingSize == runSize)
+                flushPending();
+        });
+    }
+
+    /*
+     * The number of elements added so far
+     */
+    public long size() {
+        return size;
+    }
+
+    /*
+     * Returns an iterator over all the added elements in ascending order.
+     * Waits for the batches that are still being sorted. No more elements can be added afterwards
+     */
+    public PrimitiveIterator.OfInt sortedIterator() {
+        checkNotRead();
+        read = true;
+
+        if (pendingSize > 0)
+            flushPending();
+        pending = null;
+
+        var sortedRuns = new int[runs.size()][];
+        for (int i = 0; i < sortedRuns.length; i++) {
+            try {
+                sortedRuns[i] = runs.get(i).get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a batch to be sorted", e);
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Sorting a batch failed", e.getCause());
+            }
+        }
+        runs.clear();
+
+        return new LoserTreeIterator(sortedRuns);
+    }
+
+    /*
+     * Writes all the added elements in ascending order to out, starting at index 0, and returns how many there were.
+     * out must be big enough to hold all of them
+     */
+    public int drainTo(int[] out) {
+        if (size > out.length)
+            throw new IllegalArgumentException("out holds " + out.length + " elements but there are " + size);
+
+        var it = sortedIterator();
+        int idx = 0;
+        while (it.hasNext())
+            out[idx++] = it.nextInt();
+        return idx;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private void checkNotRead() {
+        if (read)
+            throw new IllegalStateException("The sorter has already been read");
+    }
+
+    private void flushPending() {
+        var run = pendingSize == pending.length ? pending : Arrays.copyOf(pending, pendingSize);
+        submit(run);
+
+        pending = new int[runSize];
+        pendingSize = 0;
+    }
+
+    /*
+     * Sorts run in place, in the background if there's an executor
+     */
+    private void submit(int[] run) {
+        if (executor == null) {
+            SortingAlgos.introSort(run);
+            runs.add(CompletableFuture.completedFuture(run));
+        }
+        else {
+            runs.add(executor.submit(() -> {
+                SortingAlgos.introSort(run);
+                return run;
+            }));
+        }
+    }
+
+    /*
+     * Merges k sorted runs with a loser tree.
+     *
+     * The tree has k leaves, one per run, and k - 1 internal nodes stored in tree[1, k). Every internal node
+     * holds the run that lost the match played at that node, and tree[0] holds the overall winner, i.e. the run
+     * with the smallest head. After the winner's head is taken, only the matches on the path from its leaf to the
+     * root are replayed against the stored losers.
+     */
+    private static class LoserTreeIterator implements PrimitiveIterator.OfInt {
+        private final int[][] runs;
+        private final int[] positions;
+        private final int[] tree;
+        private final int k;
+
+        LoserTreeIterator(int[][] runs) {
+            this.runs = runs;
+            this.k = runs.length;
+            this.positions = new int[k];
+            this.tree = new int[Math.max(k, 1)];
+
+            if (k == 0) return;
+
+            // Playing the initial tournament bottom-up. winners[node] is the run that won at node,
+            // the leaf of run i is node k + i
+            var winners = new int[2 * k];
+            for (int i = 0; i < k; i++)
+                winners[k + i] = i;
+
+            for (int node = k - 1; node >= 1; node--) {
+                int a = winners[2 * node];
+                int b = winners[2 * node + 1];
+                if (beats(a, b)) {
+                    winners[node] = a;
+                    tree[node] = b;
+                }
+                else {
+                    winners[node] = b;
+                    tree[node] = a;
+                }
+            }
+            tree[0] = k == 1 ? 0 : winners[1];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return k > 0 && !isExhausted(tree[0]);
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            int winner = tree[0];
+            int val = runs[winner][positions[winner]];
+            positions[winner]++;
+
+            // Replaying the matches from the winner's leaf up to the root
+            for (int node = (winner + k) / 2; node >= 1; node /= 2) {
+                if (beats(tree[node], winner)) {
+                    var dummy = tree[node];
+                    tree[node] = winner;
+                    winner = dummy;
+                }
+            }
+            tree[0] = winner;
+
+            return val;
+        }
+
+        private boolean isExhausted(int run) {
+            return positions[run] == runs[run].length;
+        }
+
+        /*
+         * Whether run a's head comes before run b's. Exhausted runs lose to everything, and ties go to the
+         * lower run index so the result doesn't depend on the shape of the tree
+         */
+        private boolean beats(int a, int b) {
+            if (isExhausted(a)) return false;
+            if (isExhausted(b)) return true;
+
+            int headA = runs[a][positions[a]];
+            int headB = runs[b][positions[b]];
+            return headA < headB || (headA == headB && a < b);
+        }
+    }
+}
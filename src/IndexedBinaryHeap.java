@@ -0,0 +1,376 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * A binary heap that knows where every entry is, so entries can be removed or have their key changed
+ * in O(log n) instead of being searched for first.
+ *
+ * insert returns a handle, a small int that identifies the entry until it's removed. The heap array stores
+ * handles, and pos[handle] is where that handle currently sits in the heap array, which makes
+ * changeKey(handle, newKey) and removeHandle(handle) O(log n).
+ *
+ * Entries are also indexed by key, for remove(val) and contains(val): an open-addressing hash table maps every
+ * key in the heap to a linked list of the handles that have that key (keys may repeat). Lookups are O(1) on average.
+ *
+ * Everything lives in primitive arrays; handles of removed entries are recycled through a free list.
+ * It's a max heap by default, like BinaryHeap.
+ */
+public class IndexedBinaryHeap {
+    private static final int NONE = -1;
+
+    private final boolean isMinHeap;
+
+    // The heap itself, as an array of handles
+    private int[] heap;
+    private int occupiedSlots = 0;
+
+    // Per-handle data
+    private int[] keys;
+    private int[] pos;
+    private int[] nextSameKey;
+    private int[] prevSameKey;
+    private int handlesUsed = 0;
+
+    // Removed handles waiting to be reused, chained through nextSameKey
+    private int freeHandle = NONE;
+
+    // Open-addressing table (linear probing) from key to the first handle with that key
+    private int[] tableKeys;
+    private int[] tableHeads;
+    private int tableEntries = 0;
+
+    public IndexedBinaryHeap() {
+        this(16, false);
+    }
+
+    /*
+     * - isMinHeap: poll/peek return the smallest key instead of the largest
+     */
+    public IndexedBinaryHeap(int initialCapacity, boolean isMinHeap) {
+        int capacity = Math.max(initialCapacity, 2);
+        this.isMinHeap = isMinHeap;
+
+        heap = new int[capacity];
+        keys = new int[capacity];
+        pos = new int[capacity];
+        nextSameKey = new int[capacity];
+        prevSameKey = new int[capacity];
+
+        int tableCapacity = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        tableKeys = new int[tableCapacity];
+        tableHeads = new int[tableCapacity];
+        Arrays.fill(tableHeads, NONE);
+    }
+
+    /*
+     * Inserts key and returns the handle of the new entry
+     */
+    public int insert(int key) {
+        int handle = allocateHandle();
+        keys[handle] = key;
+        linkKey(handle);
+
+        heap[occupiedSlots] = handle;
+        pos[handle] = occupiedSlots;
+        occupiedSlots++;
+        heapifyUp(occupiedSlots - 1);
+
+        return handle;
+    }
+
+    /*
+     * Returns the top key without removing it
+     */
+    public int peek() {
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+        return keys[heap[0]];
+    }
+
+    /*
+     * Returns the handle of the top entry without removing it
+     */
+    public int peekHandle() {
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+        return heap[0];
+    }
+
+    /*
+     * Removes the top entry and returns its key
+     */
+    public int poll() {
+        int handle = peekHandle();
+        int key = keys[handle];
+        removeHandle(handle);
+        return key;
+    }
+
+    /*
+     * Removes one entry with key val. Returns false if there's none
+     */
+    public boolean remove(int val) {
+        int slot = findSlot(val);
+        if (tableHeads[slot] == NONE) return false;
+
+        removeHandle(tableHeads[slot]);
+        return true;
+    }
+
+    /*
+     * Removes the entry identified by handle. The handle can be given out again by a later insert
+     */
+    public void removeHandle(int handle) {
+        checkHandle(handle);
+
+        removeAt(pos[handle]);
+        unlinkKey(handle);
+
+        pos[handle] = NONE;
+        nextSameKey[handle] = freeHandle;
+        freeHandle = handle;
+    }
+
+    /*
+     * Changes the key of the entry identified by handle and moves it to its new place in the heap.
+     * Covers both decrease-key and increase-key
+     */
+    public void changeKey(int handle, int newKey) {
+        checkHandle(handle);
+
+        int oldKey = keys[handle];
+        if (oldKey == newKey) return;
+
+        unlinkKey(handle);
+        keys[handle] = newKey;
+        linkKey(handle);
+
+        if (comesBefore(newKey, oldKey))
+            heapifyUp(pos[handle]);
+        else
+            heapifyDown(pos[handle]);
+    }
+
+    public boolean contains(int val) {
+        return tableHeads[findSlot(val)] != NONE;
+    }
+
+    /*
+     * Whether handle identifies an entry that's currently in the heap
+     */
+    public boolean containsHandle(int handle) {
+        return handle >= 0 && handle < handlesUsed && pos[handle] != NONE;
+    }
+
+    public int getKey(int handle) {
+        checkHandle(handle);
+        return keys[handle];
+    }
+
+    public int size() {
+        return occupiedSlots;
+    }
+
+    public boolean isEmpty() {
+        return occupiedSlots == 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Whether key a belongs above key b in the heap
+     */
+    private boolean comesBefore(int a, int b) {
+        return isMinHeap ? a < b : a > b;
+    }
+
+    private void checkHandle(int handle) {
+        if (!containsHandle(handle))
+            throw new IllegalArgumentException("Handle " + handle + " isn't in the heap");
+    }
+
+    private int allocateHandle() {
+        if (freeHandle != NONE) {
+            int handle = freeHandle;
+            freeHandle = nextSameKey[handle];
+            return handle;
+        }
+
+        if (handlesUsed == keys.length)
+            expandArrs();
+        return handlesUsed++;
+    }
+
+    private void expandArrs() {
+        int capacity = keys.length * 2;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        pos = Arrays.copyOf(pos, capacity);
+        nextSameKey = Arrays.copyOf(nextSameKey, capacity);
+        prevSameKey = Arrays.copyOf(prevSameKey, capacity);
+    }
+
+    /*
+     * Removes the entry at heap index idx by moving the last entry into its place
+     */
+    private void removeAt(int idx) {
+        occupiedSlots--;
+        if (idx == occupiedSlots) return;
+
+        int last = heap[occupiedSlots];
+        heap[idx] = last;
+        pos[last] = idx;
+
+        heapifyDown(idx);
+        if (heap[idx] == last)
+            heapifyUp(idx);
+    }
+
+    private void heapifyUp(int idx) {
+        int handle = heap[idx];
+        int key = keys[handle];
+
+        while (idx > 0) {
+            int parentIdx = (idx - 1) / 2;
+            int parent = heap[parentIdx];
+            if (!comesBefore(key, keys[parent])) break;
+
+            heap[idx] = parent;
+            pos[parent] = idx;
+            idx = parentIdx;
+        }
+
+        heap[idx] = handle;
+        pos[handle] = idx;
+    }
+
+    private void heapifyDown(int idx) {
+        int handle = heap[idx];
+        int key = keys[handle];
+
+        while (true) {
+            int childIdx = idx * 2 + 1;
+            if (childIdx >= occupiedSlots) break;
+            if (childIdx + 1 < occupiedSlots && comesBefore(keys[heap[childIdx + 1]], keys[heap[childIdx]]))
+                childIdx++;
+
+            int child = heap[childIdx];
+            if (!comesBefore(keys[child], key)) break;
+
+            heap[idx] = child;
+            pos[child] = idx;
+            idx = childIdx;
+        }
+
+        heap[idx] = handle;
+        pos[handle] = idx;
+    }
+
+    /*
+     * Adds handle to the front of the list of handles with its key
+     */
+    private void linkKey(int handle) {
+        int key = keys[handle];
+        int slot = findSlot(key);
+
+        prevSameKey[handle] = NONE;
+        if (tableHeads[slot] == NONE) {
+            nextSameKey[handle] = NONE;
+            tableKeys[slot] = key;
+            tableHeads[slot] = handle;
+            tableEntries++;
+            if (tableEntries * 2 > tableKeys.length)
+                expandTable();
+        }
+        else {
+            int head = tableHeads[slot];
+            nextSameKey[handle] = head;
+            prevSameKey[head] = handle;
+            tableHeads[slot] = handle;
+        }
+    }
+
+    /*
+     * Takes handle out of the list of handles with its key, and drops the key from the table if it was the last one
+     */
+    private void unlinkKey(int handle) {
+        int prev = prevSameKey[handle];
+        int next = nextSameKey[handle];
+
+        if (next != NONE)
+            prevSameKey[next] = prev;
+
+        if (prev != NONE) {
+            nextSameKey[prev] = next;
+            return;
+        }
+
+        int slot = findSlot(keys[handle]);
+        if (next != NONE)
+            tableHeads[slot] = next;
+        else
+            removeSlot(slot);
+    }
+
+    /*
+     * Returns the slot that holds key, or the empty slot where it would go
+     */
+    private int findSlot(int key) {
+        int mask = tableKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (tableHeads[slot] != NONE && tableKeys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /*
+     * Empties slot and shifts back the entries after it that would no longer be reachable
+     * from their home slot. That keeps the table free of tombstones
+     */
+    private void removeSlot(int slot) {
+        int mask = tableKeys.length - 1;
+        int hole = slot;
+        int next = slot;
+
+        while (true) {
+            next = (next + 1) & mask;
+            if (tableHeads[next] == NONE) break;
+
+            int home = hash(tableKeys[next]) & mask;
+            // Skip the entry if its home slot lies cyclically in (hole, next]
+            boolean reachable = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (reachable) continue;
+
+            tableKeys[hole] = tableKeys[next];
+            tableHeads[hole] = tableHeads[next];
+            hole = next;
+        }
+
+        tableHeads[hole] = NONE;
+        tableEntries--;
+    }
+
+    private void expandTable() {
+        var previousKeys = tableKeys;
+        var previousHeads = tableHeads;
+
+        tableKeys = new int[previousKeys.length * 2];
+        tableHeads = new int[previousHeads.length * 2];
+        Arrays.fill(tableHeads, NONE);
+
+        for (int i = 0; i < previousKeys.length; i++) {
+            if (previousHeads[i] == NONE) continue;
+            int slot = findSlot(previousKeys[i]);
+            tableKeys[slot] = previousKeys[i];
+            tableHeads[slot] = previousHeads[i];
+        }
+    }
+
+    /*
+     * Spreads the bits of key so that runs of consecutive keys don't end up in runs of consecutive slots
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
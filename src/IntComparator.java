@@ -0,0 +1,31 @@
+/*
+ * A Comparator for primitive ints, so custom orderings don't box every element into an Integer.
+ * Used by the comparator overloads in SortingAlgos.
+ *
+ * Returns a negative number, zero or a positive number if a comes before, is tied with, or comes after b
+ */
+@FunctionalInterface
+public interface IntComparator {
+    int compare(int a, int b);
+
+    /*
+     * The opposite order of this comparator
+     */
+    default IntComparator reversed() {
+        return (a, b) -> compare(b, a);
+    }
+
+    /*
+     * Ascending order
+     */
+    static IntComparator naturalOrder() {
+        return Integer::compare;
+    }
+
+    /*
+     * Orders ints by the value they map to in table (i.e. by table[a]); every int compared must be a valid index of table
+     */
+    static IntComparator byLookup(int[] table) {
+        return (a, b) -> Integer.compare(table[a], table[b]);
+    }
+}
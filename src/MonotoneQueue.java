@@ -0,0 +1,34 @@
+/*
+ * A min priority queue of (key, vertex) entries for workloads like Dijkstra's algorithm, where the keys polled
+ * never decrease: every key inserted is at least as large as the last key polled.
+ *
+ * That restriction is what lets RadixHeap and BucketQueue beat a comparison-based heap.
+ * Entries are a long key plus an int payload, so nothing is boxed.
+ */
+public interface MonotoneQueue {
+    /*
+     * Inserts an entry. key must not be smaller than the last key polled
+     */
+    void insert(long key, int vertex);
+
+    /*
+     * The smallest key in the queue
+     */
+    long peekKey();
+
+    /*
+     * Removes an entry with the smallest key and returns its vertex. Call peekKey() first for the key
+     */
+    int poll();
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /*
+     * Removes every entry and forgets the last key polled, so the queue can be reused from scratch
+     */
+    void clear();
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/*
+ * A binary heap of ints stored outside the Java heap, so it can hold more than 2^31 entries and never adds
+ * to GC pauses.
+ *
+ * The entries live in pages of PAGE_INTS ints, each page a direct ByteBuffer, and are addressed with long
+ * indexes. Pages are only allocated as the heap grows into them. When the heap shrinks, the pages stay around
+ * until close().
+ *
+ * Direct buffers are limited by -XX:MaxDirectMemorySize, which defaults to the maximum Java heap size (-Xmx),
+ * so in direct memory the heap can't grow bigger than the Java heap could, unless that flag is raised.
+ * Allocating past the limit throws OutOfMemoryError("Direct buffer memory"). The file-backed heap from open()
+ * isn't limited by it, only by the disk and the address space, so use that for heaps larger than the Java heap.
+ *
+ * OffHeapBinaryHeap.open(file, ...) backs the pages with a memory-mapped file instead. The file also holds a small
+ * header with the size of the heap, so a heap that was closed (or just flushed) can be opened again and used
+ * right away, without heapifying anything.
+ *
+ * close() frees the memory (or unmaps the file) immediately; the heap can't be used after that.
+ * It isn't thread-safe.
+ */
+public class OffHeapBinaryHeap implements AutoCloseable {
+    private static final int PAGE_SHIFT = 20;
+    public static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_INTS - 1;
+    private static final int PAGE_BYTES = PAGE_INTS * Integer.BYTES;
+
+    // File header: magic, format version, isMinHeap, size
+    private static final int MAGIC = 0x48454150;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int MIN_HEAP_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+
+    private final boolean isMinHeap;
+    private final ArrayList<ByteBuffer> pages = new ArrayList<>();
+
+    // Only set when the heap is backed by a file
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+
+    private long occupiedSlots = 0;
+    private boolean closed = false;
+
+    /*
+     * A heap in direct memory. Max heap unless isMinHeap
+     */
+    public OffHeapBinaryHeap(boolean isMinHeap) {
+        this.isMinHeap = isMinHeap;
+        this.channel = null;
+        this.header = null;
+    }
+
+    private OffHeapBinaryHeap(FileChannel channel, MappedByteBuffer header, boolean isMinHeap, long size)
+            throws IOException {
+        this.isMinHeap = isMinHeap;
+        this.channel = channel;
+        this.header = header;
+        this.occupiedSlots = size;
+
+        try {
+            while ((long) pages.size() * PAGE_INTS < size)
+                addPage();
+        }
+        catch (RuntimeException e) {
+            // open() releases the header and the file; the pages mapped so far are released here
+            for (var page : pages)
+                BufferCleaner.free(page);
+            throw e;
+        }
+    }
+
+    /*
+     * Opens the heap stored in file, or creates a new empty one if the file is empty or doesn't exist.
+     * An existing heap has to have been created with the same isMinHeap
+     */
+    public static OffHeapBinaryHeap open(Path file, boolean isMinHeap) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        MappedByteBuffer header = null;
+        try {
+            boolean isNew = channel.size() == 0;
+            header = channel.map(MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            long size = 0;
+            if (isNew) {
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(MIN_HEAP_OFFSET, isMinHeap ? 1 : 0);
+                header.putLong(SIZE_OFFSET, 0);
+            }
+            else {
+                if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION)
+                    throw new IllegalArgumentException(file + " isn't an OffHeapBinaryHeap file");
+                if ((header.getInt(MIN_HEAP_OFFSET) == 1) != isMinHeap)
+                    throw new IllegalArgumentException(file + " holds a " + (isMinHeap ? "max" : "min") + " heap");
+                size = header.getLong(SIZE_OFFSET);
+            }
+
+            return new OffHeapBinaryHeap(channel, header, isMinHeap, size);
+        }
+        catch (IOException | RuntimeException e) {
+            BufferCleaner.free(header);
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void insert(int val) {
+        checkOpen();
+
+        long idx = occupiedSlots;
+        if (idx == (long) pages.size() * PAGE_INTS)
+            addPage();
+
+        set(idx, val);
+        setSize(occupiedSlots + 1);
+        heapifyUp(idx);
+    }
+
+    public int peek() {
+        checkOpen();
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+        return get(0);
+    }
+
+    public int poll() {
+        int root = peek();
+
+        setSize(occupiedSlots - 1);
+        if (occupiedSlots > 0) {
+            set(0, get(occupiedSlots));
+            heapifyDown(0);
+        }
+        return root;
+    }
+
+    public long size() {
+        checkOpen();
+        return occupiedSlots;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /*
+     * Writes the changes of a file-backed heap through to the file. Does nothing for a heap in direct memory
+     */
+    public void flush() {
+        checkOpen();
+        if (channel == null) return;
+
+        header.force();
+        for (var page : pages)
+            ((MappedByteBuffer) page).force();
+    }
+
+    /*
+     * Flushes a file-backed heap and releases all of the heap's memory
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+
+        flush();
+        closed = true;
+
+        for (var page : pages)
+            BufferCleaner.free(page);
+        pages.clear();
+
+        if (channel != null) {
+            BufferCleaner.free(header);
+            channel.close();
+        }
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("The heap has been closed");
+    }
+
+    private void addPage() {
+        ByteBuffer page;
+        if (channel == null) {
+            page = ByteBuffer.allocateDirect(PAGE_BYTES);
+        }
+        else {
+            long position = HEADER_BYTES + (long) pages.size() * PAGE_BYTES;
+            try {
+                page = channel.map(MapMode.READ_WRITE, position, PAGE_BYTES);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Couldn't map page " + pages.size() + " of the heap file", e);
+            }
+        }
+
+        page.order(ByteOrder.LITTLE_ENDIAN);
+        pages.add(page);
+    }
+
+    private void setSize(long size) {
+        occupiedSlots = size;
+        if (header != null)
+            header.putLong(SIZE_OFFSET, size);
+    }
+
+    private int get(long idx) {
+        return pages.get((int) (idx >>> PAGE_SHIFT)).getInt((int) (idx & PAGE_MASK) * Integer.BYTES);
+    }
+
+    private void set(long idx, int val) {
+        pages.get((int) (idx >>> PAGE_SHIFT)).putInt((int) (idx & PAGE_MASK) * Integer.BYTES, val);
+    }
+
+    private boolean comesBefore(int a, int b) {
+        return isMinHeap ? a < b : a > b;
+    }
+
+    private void heapifyUp(long idx) {
+        int val = get(idx);
+
+        while (idx > 0) {
+            long parentIdx = (idx - 1) / 2;
+            int parentVal = get(parentIdx);
+            if (!comesBefore(val, parentVal)) break;
+
+            set(idx, parentVal);
+            idx = parentIdx;
+        }
+
+        set(idx, val);
+    }
+
+    private void heapifyDown(long idx) {
+        int val = get(idx);
+
+        while (true) {
+            long childIdx = idx * 2 + 1;
+            if (childIdx >= occupiedSlots) break;
+
+            int childVal = get(childIdx);
+            if (childIdx + 1 < occupiedSlots) {
+                int rightVal = get(childIdx + 1);
+                if (comesBefore(rightVal, childVal)) {
+                    childIdx++;
+                    childVal = rightVal;
+                }
+            }
+
+            if (!comesBefore(childVal, val)) break;
+
+            set(idx, childVal);
+            idx = childIdx;
+        }
+
+        set(idx, val);
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * A pairing heap: a heap-ordered tree where every node links to its first child and its next sibling.
+ * Two heaps are melded by making one root a child of the other, in O(1), so combining queues doesn't mean
+ * re-inserting every element like it would with a BinaryHeap.
+ *
+ * - insert and meld are O(1)
+ * - changeKey towards the top (decrease-key in a min heap) cuts the node's subtree off and links it
+ *   to the root, O(1) (amortized o(log n))
+ * - poll and removeHandle are amortized O(log n): the removed node's children are combined with the usual
+ *   two-pass pairing, done in place through the sibling links
+ *
+ * The nodes don't exist as objects: they live in a Pool of primitive arrays and are identified by their index,
+ * which insert returns as the entry's handle. Heaps that should be melded have to share a Pool; handles keep
+ * identifying the same entries after a meld. Removed nodes are recycled through a free list.
+ *
+ * It's a max heap by default, like BinaryHeap. Neither it nor its Pool is thread-safe.
+ */
+public class PairingHeap {
+    private static final int NONE = -1;
+
+    // What prev holds for a node that's on the free list
+    private static final int FREE = -2;
+
+    private final Pool pool;
+    private final boolean isMinHeap;
+
+    private int root = NONE;
+    private int size = 0;
+
+    public PairingHeap() {
+        this(false);
+    }
+
+    /*
+     * - isMinHeap: poll/peek return the smallest key instead of the largest
+     */
+    public PairingHeap(boolean isMinHeap) {
+        this(new Pool(), isMinHeap);
+    }
+
+    /*
+     * A heap whose nodes are taken from pool. Only heaps that share a pool can be melded
+     */
+    public PairingHeap(Pool pool, boolean isMinHeap) {
+        this.pool = pool;
+        this.isMinHeap = isMinHeap;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    /*
+     * Inserts key and returns the handle of the new entry
+     */
+    public int insert(int key) {
+        int node = pool.allocate();
+        pool.keys[node] = key;
+
+        root = root == NONE ? node : link(root, node);
+        size++;
+        return node;
+    }
+
+    public int peek() {
+        return pool.keys[peekHandle()];
+    }
+
+    /*
+     * Returns the handle of the top entry without removing it
+     */
+    public int peekHandle() {
+        if (root == NONE)
+            throw new NoSuchElementException("The heap is empty");
+        return root;
+    }
+
+    /*
+     * Removes the top entry and returns its key
+     */
+    public int poll() {
+        int node = peekHandle();
+        int key = pool.keys[node];
+        removeHandle(node);
+        return key;
+    }
+
+    /*
+     * Removes the entry identified by handle. The handle can be given out again by a later insert
+     */
+    public void removeHandle(int handle) {
+        checkHandle(handle);
+
+        detach(handle);
+        size--;
+        pool.free(handle);
+    }
+
+    /*
+     * Changes the key of the entry identified by handle. Moving it towards the top is the cheap direction;
+     * moving it away from the top costs as much as a removeHandle
+     */
+    public void changeKey(int handle, int newKey) {
+        checkHandle(handle);
+
+        int oldKey = pool.keys[handle];
+        if (oldKey == newKey) return;
+
+        if (comesBefore(newKey, oldKey)) {
+            pool.keys[handle] = newKey;
+            if (handle != root) {
+                cut(handle);
+                root = link(root, handle);
+            }
+        }
+        else {
+            detach(handle);
+            pool.keys[handle] = newKey;
+            root = root == NONE ? handle : link(root, handle);
+        }
+    }
+
+    public int getKey(int handle) {
+        checkHandle(handle);
+        return pool.keys[handle];
+    }
+
+    /*
+     * Moves every entry of other into this heap in O(1), leaving other empty. Both heaps must share a Pool
+     * and have the same order. Handles from other now identify entries of this heap
+     */
+    public void meld(PairingHeap other) {
+        if (other == this)
+            throw new IllegalArgumentException("A heap can't be melded with itself");
+        if (other.pool != pool)
+            throw new IllegalArgumentException("Only heaps that share a Pool can be melded");
+        if (other.isMinHeap != isMinHeap)
+            throw new IllegalArgumentException("Can't meld a min heap with a max heap");
+
+        if (other.root != NONE)
+            root = root == NONE ? other.root : link(root, other.root);
+        size += other.size;
+
+        other.root = NONE;
+        other.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Whether key a belongs above key b in the heap
+     */
+    private boolean comesBefore(int a, int b) {
+        return isMinHeap ? a < b : a > b;
+    }
+
+    /*
+     * Handles are only checked against the pool: a live handle of another heap sharing the pool isn't caught
+     */
+    private void checkHandle(int handle) {
+        if (!pool.isLive(handle))
+            throw new IllegalArgumentException("Handle " + handle + " isn't in the heap");
+    }
+
+    /*
+     * Makes the root that comes later the first child of the other one and returns the new root.
+     * Both a and b must be roots; their sibling links are ignored
+     */
+    private int link(int a, int b) {
+        var keys = pool.keys;
+        int parent = comesBefore(keys[b], keys[a]) ? b : a;
+        int child = parent == a ? b : a;
+
+        int firstChild = pool.child[parent];
+        pool.sibling[child] = firstChild;
+        if (firstChild != NONE)
+            pool.prev[firstChild] = child;
+        pool.prev[child] = parent;
+        pool.child[parent] = child;
+
+        pool.sibling[parent] = NONE;
+        pool.prev[parent] = NONE;
+        return parent;
+    }
+
+    /*
+     * Takes the subtree rooted at node (which isn't the root) out of its parent's list of children
+     */
+    private void cut(int node) {
+        int prev = pool.prev[node];
+        int next = pool.sibling[node];
+
+        if (pool.child[prev] == node)
+            pool.child[prev] = next;
+        else
+            pool.sibling[prev] = next;
+        if (next != NONE)
+            pool.prev[next] = prev;
+
+        pool.sibling[node] = NONE;
+        pool.prev[node] = NONE;
+    }
+
+    /*
+     * Takes node out of the heap, keeping its children in it, and leaves it as a lone root
+     */
+    private void detach(int node) {
+        int children = pool.child[node];
+        pool.child[node] = NONE;
+
+        if (node == root) {
+            root = children == NONE ? NONE : pairUp(children);
+            return;
+        }
+
+        cut(node);
+        if (children != NONE)
+            root = link(root, pairUp(children));
+    }
+
+    /*
+     * Combines the list of siblings starting at first into one tree and returns its root.
+     *
+     * The first pass links the siblings in pairs from left to right, pushing each result onto a stack that's
+     * chained through the sibling links. The second pass pops the stack, i.e. goes from right to left, linking
+     * every tree into the result
+     */
+    private int pairUp(int first) {
+        var sibling = pool.sibling;
+
+        int stack = NONE;
+        while (first != NONE) {
+            int a = first;
+            int b = sibling[a];
+            if (b == NONE) {
+                sibling[a] = stack;
+                stack = a;
+                break;
+            }
+
+            first = sibling[b];
+            int linked = link(a, b);
+            sibling[linked] = stack;
+            stack = linked;
+        }
+
+        int result = stack;
+        stack = sibling[result];
+        while (stack != NONE) {
+            int next = sibling[stack];
+            result = link(result, stack);
+            stack = next;
+        }
+
+        sibling[result] = NONE;
+        pool.prev[result] = NONE;
+        return result;
+    }
+
+    /*
+     * The nodes of one or more pairing heaps, stored as parallel arrays indexed by node
+     */
+    public static class Pool {
+        private int[] keys;
+        private int[] child;
+        private int[] sibling;
+
+        // The parent for a first child, the previous sibling otherwise, NONE for a root and FREE for a free node
+        private int[] prev;
+
+        private int nodesUsed = 0;
+
+        // Free nodes waiting to be reused, chained through sibling
+        private int freeNode = NONE;
+
+        public Pool() {
+            this(16);
+        }
+
+        public Pool(int initialCapacity) {
+            int capacity = Math.max(initialCapacity, 2);
+            keys = new int[capacity];
+            child = new int[capacity];
+            sibling = new int[capacity];
+            prev = new int[capacity];
+        }
+
+        private boolean isLive(int node) {
+            return node >= 0 && node < nodesUsed && prev[node] != FREE;
+        }
+
+        private int allocate() {
+            int node;
+            if (freeNode != NONE) {
+                node = freeNode;
+                freeNode = sibling[node];
+            }
+            else {
+                if (nodesUsed == keys.length)
+                    expandArrs();
+                node = nodesUsed++;
+            }
+
+            child[node] = NONE;
+            sibling[node] = NONE;
+            prev[node] = NONE;
+            return node;
+        }
+
+        private void free(int node) {
+            prev[node] = FREE;
+            sibling[node] = freeNode;
+            freeNode = node;
+        }
+
+        private void expandArrs() {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            child = Arrays.copyOf(child, capacity);
+            sibling = Arrays.copyOf(sibling, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * A binary heap of (priority, payload) entries, e.g. a task id with its priority, stored without any objects.
+ * Unlike a map from priority to payload next to a BinaryHeap, several entries can share a priority.
+ *
+ * Every entry is packed into one long: the priority in the high 32 bits and the payload in the low 32 bits.
+ * Comparing two packed longs compares their priorities first, so the heap is a plain long[] and each
+ * comparison is a single long comparison. Among entries with the same priority the order is arbitrary.
+ *
+ * In stable mode, entries with the same priority are polled in the order they were inserted. The low 32 bits
+ * then hold an insertion sequence number instead, and the payloads move along in a parallel int[].
+ *
+ * poll() returns the entry packed the same way (priority high, payload low); priorityOf and payloadOf
+ * unpack it. It's a max heap by default, like BinaryHeap.
+ */
+public class PayloadHeap {
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    private final boolean isMinHeap;
+    private final boolean stable;
+
+    private long[] entries;
+
+    // Only in stable mode
+    private int[] payloads;
+    private long nextSequence = 0;
+
+    private int occupiedSlots = 0;
+
+    public PayloadHeap() {
+        this(16, false, false);
+    }
+
+    /*
+     * - isMinHeap: the entry with the smallest priority is polled first instead of the largest
+     * - stable: entries with the same priority are polled in insertion order
+     */
+    public PayloadHeap(int initialCapacity, boolean isMinHeap, boolean stable) {
+        int capacity = Math.max(initialCapacity, 2);
+        this.isMinHeap = isMinHeap;
+        this.stable = stable;
+        this.entries = new long[capacity];
+        this.payloads = stable ? new int[capacity] : null;
+    }
+
+    /*
+     * The priority of an entry returned by poll()
+     */
+    public static int priorityOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    /*
+     * The payload of an entry returned by poll()
+     */
+    public static int payloadOf(long entry) {
+        return (int) entry;
+    }
+
+    public void insert(int priority, int payload) {
+        if (occupiedSlots == entries.length)
+            expandArrs();
+
+        int idx = occupiedSlots;
+        if (stable) {
+            if (nextSequence > LOW_MASK)
+                renumberSequences();
+
+            // A max heap polls the larger low bits first, so it stores the sequence number inverted
+            long sequence = isMinHeap ? nextSequence : LOW_MASK - nextSequence;
+            nextSequence++;
+            entries[idx] = ((long) priority << 32) | sequence;
+            payloads[idx] = payload;
+        }
+        else {
+            entries[idx] = pack(priority, payload);
+        }
+
+        occupiedSlots++;
+        heapifyUp(idx);
+    }
+
+    public int peekPriority() {
+        checkNotEmpty();
+        return priorityOf(entries[0]);
+    }
+
+    public int peekPayload() {
+        checkNotEmpty();
+        return stable ? payloads[0] : payloadOf(entries[0]);
+    }
+
+    /*
+     * Removes the top entry and returns it packed into a long, see priorityOf and payloadOf
+     */
+    public long poll() {
+        checkNotEmpty();
+
+        long top = pack(priorityOf(entries[0]), stable ? payloads[0] : payloadOf(entries[0]));
+
+        occupiedSlots--;
+        if (occupiedSlots > 0) {
+            entries[0] = entries[occupiedSlots];
+            if (stable)
+                payloads[0] = payloads[occupiedSlots];
+            heapifyDown(0);
+        }
+        return top;
+    }
+
+    public int size() {
+        return occupiedSlots;
+    }
+
+    public boolean isEmpty() {
+        return occupiedSlots == 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private static long pack(int priority, int payload) {
+        return ((long) priority << 32) | (payload & LOW_MASK);
+    }
+
+    private void checkNotEmpty() {
+        if (occupiedSlots == 0)
+            throw new NoSuchElementException("The heap is empty");
+    }
+
+    private boolean comesBefore(long a, long b) {
+        return isMinHeap ? a < b : a > b;
+    }
+
+    private void expandArrs() {
+        entries = Arrays.copyOf(entries, entries.length * 2);
+        if (stable)
+            payloads = Arrays.copyOf(payloads, payloads.length * 2);
+    }
+
+    /*
+     * Once 2^32 entries have been inserted the sequence numbers would wrap around. They're renumbered from 0
+     * instead, keeping their order, which leaves the heap order unchanged
+     */
+    private void renumberSequences() {
+        var sequences = new long[occupiedSlots];
+        for (int i = 0; i < occupiedSlots; i++)
+            sequences[i] = sequenceOf(entries[i]);
+        Arrays.sort(sequences);
+
+        for (int i = 0; i < occupiedSlots; i++) {
+            long renumbered = Arrays.binarySearch(sequences, sequenceOf(entries[i]));
+            long stored = isMinHeap ? renumbered : LOW_MASK - renumbered;
+            entries[i] = (entries[i] & ~LOW_MASK) | stored;
+        }
+        nextSequence = occupiedSlots;
+    }
+
+    private long sequenceOf(long entry) {
+        long low = entry & LOW_MASK;
+        return isMinHeap ? low : LOW_MASK - low;
+    }
+
+    private void heapifyUp(int idx) {
+        long entry = entries[idx];
+        int payload = stable ? payloads[idx] : 0;
+
+        while (idx > 0) {
+            int parentIdx = (idx - 1) / 2;
+            if (!comesBefore(entry, entries[parentIdx])) break;
+
+            entries[idx] = entries[parentIdx];
+            if (stable)
+                payloads[idx] = payloads[parentIdx];
+            idx = parentIdx;
+        }
+
+        entries[idx] = entry;
+        if (stable)
+            payloads[idx] = payload;
+    }
+
+    private void heapifyDown(int idx) {
+        long entry = entries[idx];
+        int payload = stable ? payloads[idx] : 0;
+
+        while (true) {
+            int childIdx = idx * 2 + 1;
+            if (childIdx >= occupiedSlots) break;
+            if (childIdx + 1 < occupiedSlots && comesBefore(entries[childIdx + 1], entries[childIdx]))
+                childIdx++;
+
+            if (!comesBefore(entries[childIdx], entry)) break;
+
+            entries[idx] = entries[childIdx];
+            if (stable)
+                payloads[idx] = payloads[childIdx];
+            idx = childIdx;
+        }
+
+        entries[idx] = entry;
+        if (stable)
+            payloads[idx] = payload;
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.NoSuchElementException;
+
+/*
+ * An immutable AVL tree of float keys (a sorted set). insert and remove don't change the tree, they return a new
+ * one that shares every node with it except the O(log n) nodes on the path to the key, which are copied.
+ *
+ * Old versions stay valid for as long as someone holds them, so a snapshot of the set is just a reference
+ * to a tree, taken in O(1), and nodes no version uses anymore are left to the GC. Since nothing is ever
+ * modified after it's built, any number of threads can read a tree without locking, including while
+ * newer versions are being made from it. SnapshotAVLTree publishes the versions a writer makes to readers.
+ *
+ * Unlike AVLTree, the nodes are objects: an array-backed tree would have to copy its arrays, or never reuse
+ * a slot, to keep old versions intact.
+ *
+ * Keys are ordered like Float.compare, as in AVLTree.
+ */
+public final class PersistentAVLTree {
+    private static final PersistentAVLTree EMPTY = new PersistentAVLTree(null, 0);
+
+    // An AVL tree of n nodes is at most ~1.44 log2(n) high, so this covers any tree with an int size
+    private static final int MAX_HEIGHT = 64;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentAVLTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentAVLTree empty() {
+        return EMPTY;
+    }
+
+    /*
+     * Returns a tree that also has key. Returns this tree if key is already in it
+     */
+    public PersistentAVLTree insert(float key) {
+        var newRoot = insert(root, key);
+        return newRoot == root ? this : new PersistentAVLTree(newRoot, size + 1);
+    }
+
+    /*
+     * Returns a tree without key. Returns this tree if key isn't in it
+     */
+    public PersistentAVLTree remove(float key) {
+        var newRoot = remove(root, key);
+        return newRoot == root ? this : size == 1 ? EMPTY : new PersistentAVLTree(newRoot, size - 1);
+    }
+
+    public boolean contains(float key) {
+        var node = root;
+        while (node != null) {
+            int cmp = Float.compare(key, node.key);
+            if (cmp == 0) return true;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    public float min() {
+        if (root == null)
+            throw new NoSuchElementException("The tree is empty");
+        return minNode(root).key;
+    }
+
+    public float max() {
+        if (root == null)
+            throw new NoSuchElementException("The tree is empty");
+
+        var node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+     * The number of nodes on the longest path from the root down, 0 for an empty tree
+     */
+    public int height() {
+        return heightOf(root);
+    }
+
+    /*
+     * Returns the keys in ascending order
+     */
+    public float[] toArray() {
+        var sorted = new float[size];
+        var cursor = cursor();
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = cursor.nextFloat();
+        return sorted;
+    }
+
+    /*
+     * Returns a cursor over all the keys in ascending order
+     */
+    public Cursor cursor() {
+        return new Cursor(Float.NEGATIVE_INFINITY, Float.NaN, false);
+    }
+
+    /*
+     * Returns a cursor over the keys in [lo, hi], in ascending order or in descending order if descending
+     */
+    public Cursor cursor(float lo, float hi, boolean descending) {
+        return new Cursor(lo, hi, descending);
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private static int heightOf(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static Node minNode(Node node) {
+        while (node.left != null)
+            node = node.left;
+        return node;
+    }
+
+    /*
+     * Returns the subtree node with key added, or node itself if key is already in it
+     */
+    private static Node insert(Node node, float key) {
+        if (node == null)
+            return new Node(key, null, null);
+
+        int cmp = Float.compare(key, node.key);
+        if (cmp == 0) return node;
+
+        if (cmp < 0) {
+            var newLeft = insert(node.left, key);
+            return newLeft == node.left ? node : balance(node.key, newLeft, node.right);
+        }
+
+        var newRight = insert(node.right, key);
+        return newRight == node.right ? node : balance(node.key, node.left, newRight);
+    }
+
+    /*
+     * Returns the subtree node without key, or node itself if key isn't in it
+     */
+    private static Node remove(Node node, float key) {
+        if (node == null) return null;
+
+        int cmp = Float.compare(key, node.key);
+        if (cmp < 0) {
+            var newLeft = remove(node.left, key);
+            return newLeft == node.left ? node : balance(node.key, newLeft, node.right);
+        }
+        if (cmp > 0) {
+            var newRight = remove(node.right, key);
+            return newRight == node.right ? node : balance(node.key, node.left, newRight);
+        }
+
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+
+        // Two children: the successor takes node's place
+        float successor = minNode(node.right).key;
+        return balance(successor, node.left, remove(node.right, successor));
+    }
+
+    /*
+     * Makes a node out of key, left and right, whose heights differ by at most 2, rotating if they differ by 2
+     */
+    private static Node balance(float key, Node left, Node right) {
+        int leftHeight = heightOf(left);
+        int rightHeight = heightOf(right);
+
+        if (leftHeight > rightHeight + 1) {
+            // left is 2 higher, so it has children
+            if (heightOf(left.left) >= heightOf(left.right))
+                return new Node(left.key, left.left, new Node(key, left.right, right));
+
+            var leftRight = left.right;
+            return new Node(leftRight.key,
+                    new Node(left.key, left.left, leftRight.left),
+                    new Node(key, leftRight.right, right));
+        }
+
+        if (rightHeight > leftHeight + 1) {
+            if (heightOf(right.right) >= heightOf(right.left))
+                return new Node(right.key, new Node(key, left, right.left), right.right);
+
+            var rightLeft = right.left;
+            return new Node(rightLeft.key,
+                    new Node(key, left, rightLeft.left),
+                    new Node(right.key, rightLeft.right, right.right));
+        }
+
+        return new Node(key, left, right);
+    }
+
+    private static final class Node {
+        final float key;
+        final Node left;
+        final Node right;
+
+        // The number of nodes on the longest path down from this node, so a leaf has height 1
+        final int height;
+
+        Node(float key, Node left, Node right) {
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(heightOf(left), heightOf(right));
+        }
+    }
+
+    /*
+     * An in-order iterator over the keys in [lo, hi], like AVLTree.Cursor. The tree it came from never changes,
+     * so it keeps iterating that version of the set whatever versions are made after it
+     */
+    public final class Cursor implements FloatIterator {
+        private final float lo;
+        private final float hi;
+        private final boolean descending;
+
+        private final Node[] stack = new Node[MAX_HEIGHT];
+        private int depth = 0;
+
+        private Cursor(float lo, float hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+
+            seek(descending ? hi : lo);
+        }
+
+        /*
+         * Moves the cursor so that the next key is the first one >= key (<= key if descending),
+         * staying within the cursor's range. O(log n)
+         */
+        public void seek(float key) {
+            depth = 0;
+
+            var node = root;
+            if (!descending) {
+                if (Float.compare(key, lo) < 0) key = lo;
+                while (node != null) {
+                    if (Float.compare(node.key, key) >= 0) {
+                        stack[depth++] = node;
+                        node = node.left;
+                    }
+                    else {
+                        node = node.right;
+                    }
+                }
+            }
+            else {
+                if (Float.compare(key, hi) > 0) key = hi;
+                while (node != null) {
+                    if (Float.compare(node.key, key) <= 0) {
+                        stack[depth++] = node;
+                        node = node.right;
+                    }
+                    else {
+                        node = node.left;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (depth == 0) return false;
+
+            float next = stack[depth - 1].key;
+            return descending ? Float.compare(next, lo) >= 0 : Float.compare(next, hi) <= 0;
+        }
+
+        @Override
+        public float nextFloat() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            var node = stack[--depth];
+            if (!descending) {
+                for (var n = node.right; n != null; n = n.left)
+                    stack[depth++] = n;
+            }
+            else {
+                for (var n = node.left; n != null; n = n.right)
+                    stack[depth++] = n;
+            }
+            return node.key;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/*
+ * A monotone priority queue for non-negative long (or int) keys, with an int vertex per entry.
+ *
+ * Entries are kept in 65 buckets relative to last, the last key polled: bucket 0 holds the keys equal to last,
+ * and bucket i > 0 holds the keys whose highest bit that differs from last is bit i - 1.
+ * When bucket 0 runs out, the first non-empty bucket is emptied: its smallest key becomes the new last,
+ * and each of its entries goes to a strictly lower bucket.
+ * An entry can only move down, at most 64 times, so poll is amortized O(log C) where C is the largest gap
+ * between a key and last. insert is O(1).
+ *
+ * Each bucket is a pair of growable primitive arrays that are reused, so once they're big enough
+ * nothing is allocated.
+ */
+public class RadixHeap implements MonotoneQueue {
+    private static final int BUCKETS = 65;
+    private static final int INITIAL_BUCKET_CAPACITY = 8;
+
+    private final long[][] keys = new long[BUCKETS][];
+    private final int[][] vertices = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+
+    private long last = 0;
+    private int size = 0;
+
+    @Override
+    public void insert(long key, int vertex) {
+        if (key < last)
+            throw new IllegalArgumentException("key " + key + " is smaller than the last key polled, " + last);
+
+        push(bucketOf(key), key, vertex);
+        size++;
+    }
+
+    @Override
+    public long peekKey() {
+        fillFirstBucket();
+        return last;
+    }
+
+    @Override
+    public int poll() {
+        fillFirstBucket();
+
+        size--;
+        return vertices[0][--bucketSizes[0]];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bucketSizes, 0);
+        last = 0;
+        size = 0;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    private int bucketOf(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void push(int bucket, long key, int vertex) {
+        int bucketSize = bucketSizes[bucket];
+        if (keys[bucket] == null) {
+            keys[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+            vertices[bucket] = new int[INITIAL_BUCKET_CAPACITY];
+        }
+        else if (bucketSize == keys[bucket].length) {
+            keys[bucket] = Arrays.copyOf(keys[bucket], bucketSize * 2);
+            vertices[bucket] = Arrays.copyOf(vertices[bucket], bucketSize * 2);
+        }
+
+        keys[bucket][bucketSize] = key;
+        vertices[bucket][bucketSize] = vertex;
+        bucketSizes[bucket] = bucketSize + 1;
+    }
+
+    /*
+     * Makes sure bucket 0 isn't empty, by redistributing the first non-empty bucket around its smallest key
+     */
+    private void fillFirstBucket() {
+        if (size == 0)
+            throw new NoSuchElementException("The queue is empty");
+        if (bucketSizes[0] > 0) return;
+
+        int bucket = 1;
+        while (bucketSizes[bucket] == 0)
+            bucket++;
+
+        var bucketKeys = keys[bucket];
+        var bucketVertices = vertices[bucket];
+        int bucketSize = bucketSizes[bucket];
+
+        long min = bucketKeys[0];
+        for (int i = 1; i < bucketSize; i++)
+            min = Math.min(min, bucketKeys[i]);
+
+        // Every key in the bucket now differs from last at a lower bit than before
+        last = min;
+        bucketSizes[bucket] = 0;
+        for (int i = 0; i < bucketSize; i++)
+            push(bucketOf(bucketKeys[i]), bucketKeys[i], bucketVertices[i]);
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/*
+ * A sorted set of float keys for one writer and any number of readers, on top of PersistentAVLTree.
+ *
+ * The current version of the set is a PersistentAVLTree held in an AtomicReference. The writer makes the next
+ * version by path copying and publishes it by swapping the reference, so readers never lock or wait, and a tree
+ * a reader got from snapshot() is never changed: it can be searched and iterated for as long as needed and
+ * always shows the set exactly as it was at some point.
+ *
+ * update applies several changes and publishes them as one version, so readers see either all of them or none.
+ *
+ * It's meant for a single writer. Writes from more threads are still safe, but they compete for the reference
+ * and every write that loses has to be redone.
+ */
+public class SnapshotAVLTree {
+    private final AtomicReference<PersistentAVLTree> current = new AtomicReference<>(PersistentAVLTree.empty());
+
+    /*
+     * Returns the current version of the set. O(1)
+     */
+    public PersistentAVLTree snapshot() {
+        return current.get();
+    }
+
+    /*
+     * Adds key. Returns false if it was already in the set
+     */
+    public boolean insert(float key) {
+        while (true) {
+            var tree = current.get();
+            var newTree = tree.insert(key);
+            if (newTree == tree) return false;
+            if (current.compareAndSet(tree, newTree)) return true;
+        }
+    }
+
+    /*
+     * Removes key. Returns false if it wasn't in the set
+     */
+    public boolean remove(float key) {
+        while (true) {
+            var tree = current.get();
+            var newTree = tree.remove(key);
+            if (newTree == tree) return false;
+            if (current.compareAndSet(tree, newTree)) return true;
+        }
+    }
+
+    /*
+     * Publishes changes(current version) as the new version and returns it. changes can be applied more than
+     * once if another thread writes at the same time, so it shouldn't have side effects
+     */
+    public PersistentAVLTree update(UnaryOperator<PersistentAVLTree> changes) {
+        return current.updateAndGet(changes);
+    }
+
+    public boolean contains(float key) {
+        return current.get().contains(key);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -1,5 +1,9 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SortingAlgos {
 
@@ -33,6 +37,42 @@ public class SortingAlgos {
         }
     }
 
+    /*
+     * Insertion sort over data[start, end), end is exclusive
+     */
+    static void insertionSort(int[] data, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            var val = data[i];
+            var left = i - 1;
+
+            while (left >= start && data[left] > val) {
+                data[left + 1] = data[left];
+                left--;
+            }
+            data[left + 1] = val;
+        }
+    }
+
+    /*
+     * Insertion sort in the order given by cmp. It's stable
+     */
+    public static void insertionSort(int[] data, IntComparator cmp) {
+        insertionSort(data, 0, data.length, cmp);
+    }
+
+    private static void insertionSort(int[] data, int start, int end, IntComparator cmp) {
+        for (int i = start + 1; i < end; i++) {
+            var val = data[i];
+            var left = i - 1;
+
+            while (left >= start && cmp.compare(data[left], val) > 0) {
+                data[left + 1] = data[left];
+                left--;
+            }
+            data[left + 1] = val;
+        }
+    }
+
     public static void selectionSort(int[] data) {
         for (int i = 0; i < data.length; i++) {
             var suffixMin = Integer.MAX_VALUE;
@@ -96,7 +136,35 @@ public class SortingAlgos {
     private static void quickSortHoare(int[] data, int start, int end) {
         if (start >= end - 1) return;
 
-        int pivotVal = data[(start + end)/2];
+        int divisionIdx = hoarePartition(data, start, end);
+
+        quickSortHoare(data, start, divisionIdx);
+        quickSortHoare(data, divisionIdx, end);
+    }
+
+    /*
+     * quickSortHoare in the order given by cmp
+     */
+    public static void quickSortHoare(int[] data, IntComparator cmp) {
+        quickSortHoare(data, 0, data.length, cmp);
+    }
+
+    private static void quickSortHoare(int[] data, int start, int end, IntComparator cmp) {
+        if (start >= end - 1) return;
+
+        int divisionIdx = hoarePartition(data, start, end, cmp);
+
+        quickSortHoare(data, start, divisionIdx, cmp);
+        quickSortHoare(data, divisionIdx, end, cmp);
+    }
+
+    /*
+     * Partitions data[start, end) around its middle element using hoare's scheme.
+     * Returns the division index: every element before it is <= every element from it onwards.
+     * end is exclusive and the range must hold at least 2 elements
+     */
+    private static int hoarePartition(int[] data, int start, int end) {
+        int pivotVal = data[(start + end) >>> 1];
 
         int left = start - 1;
         int right = end;
@@ -108,15 +176,429 @@ public class SortingAlgos {
             do right--;
             while (data[right] > pivotVal);
 
-            if (left >= right) break;
+            if (left >= right) return left;
 
             var dummy = data[left];
             data[left] = data[right];
             data[right] = dummy;
         }
+    }
+
+    /*
+     * hoarePartition in the order given by cmp
+     */
+    private static int hoarePartition(int[] data, int start, int end, IntComparator cmp) {
+        int pivotVal = data[(start + end) >>> 1];
+
+        int left = start - 1;
+        int right = end;
+
+        while (true) {
+            do left++;
+            while (cmp.compare(data[left], pivotVal) < 0);
+
+            do right--;
+            while (cmp.compare(data[right], pivotVal) > 0);
+
+            if (left >= right) return left;
+
+            swap(data, left, right);
+        }
+    }
+
+    /*
+     * Ranges smaller than this are finished off with insertion sort by introSort
+     */
+    private static final int INTRO_SORT_INSERTION_CUTOFF = 24;
+
+    /*
+     * Ranges at least this big pick their pivot with a ninther instead of a median of 3
+     */
+    static final int NINTHER_THRESHOLD = 128;
+
+    /*
+     * An implementation of introsort: quicksort with a median-of-3/ninther pivot and hoare's partitioning scheme,
+     * insertion sort for small ranges, and heapsort once the recursion gets deeper than 2 * log2(n).
+     * The heapsort fallback guarantees O(n log n) in the worst case
+     */
+    public static void introSort(int[] data) {
+        introSort(data, false);
+    }
+
+    /*
+     * dualPivot: partition around two pivots (3 ranges) instead of one
+     */
+    public static void introSort(int[] data, boolean dualPivot) {
+        if (data.length < 2) return;
+
+        int depthLimit = 2 * (31 - Integer.numberOfLeadingZeros(data.length));
+        introSort(data, 0, data.length, depthLimit, dualPivot);
+    }
+
+    /*
+     * end is exclusive.
+     * Recurses into the smaller side(s) and loops on the largest one, so the stack stays O(log n) deep
+     */
+    private static void introSort(int[] data, int start, int end, int depthLimit, boolean dualPivot) {
+        while (end - start >= INTRO_SORT_INSERTION_CUTOFF) {
+            if (depthLimit == 0) {
+                heapSort(data, start, end);
+                return;
+            }
+            depthLimit--;
+
+            if (dualPivot) {
+                long bounds = dualPivotPartition(data, start, end);
+                int lt = (int) (bounds >>> 32);
+                int gt = (int) bounds;
+
+                // Everything in the middle range equals the pivot when both pivots are equal
+                boolean sortMiddle = data[lt] != data[gt];
+                int leftLength = lt - start;
+                int middleLength = sortMiddle ? gt - lt - 1 : 0;
+                int rightLength = end - gt - 1;
+
+                // Of the 3 ranges, the 2 smaller ones are recursed into and the largest is looped on.
+                // Neither of the smaller ones can be more than half of the range
+                if (leftLength >= middleLength && leftLength >= rightLength) {
+                    if (sortMiddle)
+                        introSort(data, lt + 1, gt, depthLimit, true);
+                    introSort(data, gt + 1, end, depthLimit, true);
+                    end = lt;
+                }
+                else if (middleLength >= rightLength) {
+                    introSort(data, start, lt, depthLimit, true);
+                    introSort(data, gt + 1, end, depthLimit, true);
+                    start = lt + 1;
+                    end = gt;
+                }
+                else {
+                    introSort(data, start, lt, depthLimit, true);
+                    if (sortMiddle)
+                        introSort(data, lt + 1, gt, depthLimit, true);
+                    start = gt + 1;
+                }
+                continue;
+            }
+
+            int pivotIdx = end - start >= NINTHER_THRESHOLD
+                    ? ninther(data, start, end)
+                    : medianOf3(data, start, (start + end) >>> 1, end - 1);
+
+            // hoarePartition pivots around the middle element, so the chosen pivot is moved there
+            int midIdx = (start + end) >>> 1;
+            swap(data, pivotIdx, midIdx);
+            int divisionIdx = hoarePartition(data, start, end);
+
+            if (divisionIdx - start < end - divisionIdx) {
+                introSort(data, start, divisionIdx, depthLimit, false);
+                start = divisionIdx;
+            }
+            else {
+                introSort(data, divisionIdx, end, depthLimit, false);
+                end = divisionIdx;
+            }
+        }
+
+        insertionSort(data, start, end);
+    }
+
+    /*
+     * Partitions data[start, end) around two pivots p <= q taken from a sorted sample of 5 elements.
+     * Returns the final indices lt and gt of the pivots packed as (lt << 32) | gt, where
+     * data[start, lt) < p, p <= data[lt + 1, gt) <= q, and data[gt + 1, end) > q.
+     * The range must hold at least 5 elements
+     */
+    private static long dualPivotPartition(int[] data, int start, int end) {
+        int seventh = (end - start) / 7;
+        int e3 = (start + end) >>> 1;
+        int e2 = e3 - seventh;
+        int e1 = e2 - seventh;
+        int e4 = e3 + seventh;
+        int e5 = e4 + seventh;
+
+        // Sorting the 5 sample elements with an insertion sort
+        int[] sample = { e1, e2, e3, e4, e5 };
+        for (int i = 1; i < sample.length; i++) {
+            for (int j = i; j > 0 && data[sample[j - 1]] > data[sample[j]]; j--)
+                swap(data, sample[j - 1], sample[j]);
+        }
+
+        // Moving the 2nd and 4th smallest sample elements to the ends to act as the pivots
+        swap(data, start, e2);
+        swap(data, end - 1, e4);
+        int p = data[start];
+        int q = data[end - 1];
+
+        int lt = start + 1;
+        int gt = end - 2;
+        int i = lt;
+
+        while (i <= gt) {
+            if (data[i] < p) {
+                swap(data, i, lt);
+                lt++;
+            }
+            else if (data[i] > q) {
+                while (data[gt] > q && i < gt)
+                    gt--;
+                swap(data, i, gt);
+                gt--;
+                if (data[i] < p) {
+                    swap(data, i, lt);
+                    lt++;
+                }
+            }
+            i++;
+        }
+
+        lt--;
+        gt++;
+        swap(data, start, lt);
+        swap(data, end - 1, gt);
+
+        return ((long) lt << 32) | gt;
+    }
+
+    /*
+     * Returns the index of the median of data[a], data[b] and data[c]
+     */
+    static int medianOf3(int[] data, int a, int b, int c) {
+        if (data[a] < data[b]) {
+            if (data[b] < data[c]) return b;
+            return data[a] < data[c] ? c : a;
+        }
+        if (data[a] < data[c]) return a;
+        return data[b] < data[c] ? c : b;
+    }
+
+    /*
+     * Returns the index of tukey's ninther of data[start, end): the median of the medians of 3 evenly spaced triples
+     */
+    static int ninther(int[] data, int start, int end) {
+        int step = (end - start) / 8;
+        int mid = (start + end) >>> 1;
+        int last = end - 1;
+
+        int m1 = medianOf3(data, start, start + step, start + 2 * step);
+        int m2 = medianOf3(data, mid - step, mid, mid + step);
+        int m3 = medianOf3(data, last - 2 * step, last - step, last);
+
+        return medianOf3(data, m1, m2, m3);
+    }
+
+    /*
+     * An implementation of heapsort
+     */
+    public static void heapSort(int[] data) {
+        heapSort(data, 0, data.length);
+    }
+
+    /*
+     * Heapsort over data[start, end), end is exclusive.
+     * Builds a max heap bottom-up and then repeatedly moves the max to the back of the range
+     */
+    static void heapSort(int[] data, int start, int end) {
+        int size = end - start;
+
+        for (int i = size / 2 - 1; i >= 0; i--)
+            siftDown(data, start, i, size);
+
+        for (int last = size - 1; last > 0; last--) {
+            swap(data, start, start + last);
+            siftDown(data, start, 0, last);
+        }
+    }
+
+    /*
+     * Sifts down the element at heap index i of the max heap stored at data[offset, offset + size)
+     */
+    private static void siftDown(int[] data, int offset, int i, int size) {
+        int val = data[offset + i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && data[offset + child + 1] > data[offset + child])
+                child++;
+            if (data[offset + child] <= val) break;
+
+            data[offset + i] = data[offset + child];
+            i = child;
+        }
+
+        data[offset + i] = val;
+    }
+
+    static void swap(int[] data, int i, int j) {
+        var dummy = data[i];
+        data[i] = data[j];
+        data[j] = dummy;
+    }
+
+    /*
+     * Returns the kth smallest element of data (k is 0-based), i.e. what data[k] would be if data were sorted.
+     *
+     * It's an introselect: it partitions with hoare's scheme and only keeps going into the side that holds k,
+     * which is O(n) on average. If that takes more than 2 * log2(n) rounds it switches to median-of-medians
+     * pivots, which bounds the worst case.
+     *
+     * data is reordered in place so that data[k] holds the answer, everything before it is <= it and
+     * everything after it is >= it
+     */
+    public static int select(int[] data, int k) {
+        if (k < 0 || k >= data.length)
+            throw new IndexOutOfBoundsException("k " + k + " is out of bounds for length " + data.length);
+
+        select(data, 0, data.length, k);
+        return data[k];
+    }
+
+    /*
+     * Rearranges data so that data[0, k) holds the k smallest elements in sorted order.
+     * The order of the rest of the elements is unspecified
+     */
+    public static void partialSort(int[] data, int k) {
+        if (k < 0 || k > data.length)
+            throw new IndexOutOfBoundsException("k " + k + " is out of bounds for length " + data.length);
+        if (k == 0) return;
+
+        if (k < data.length)
+            select(data, 0, data.length, k - 1);
+
+        introSort(data, 0, k, 2 * (31 - Integer.numberOfLeadingZeros(k)), false);
+    }
+
+    /*
+     * Returns the k largest elements of data, from largest to smallest.
+     * data isn't modified; the selection works on a copy
+     */
+    public static int[] topK(int[] data, int k) {
+        if (k < 0 || k > data.length)
+            throw new IndexOutOfBoundsException("k " + k + " is out of bounds for length " + data.length);
+        if (k == 0) return new int[0];
+
+        var copy = data.clone();
+        int firstIdx = copy.length - k;
+        if (firstIdx > 0)
+            select(copy, 0, copy.length, firstIdx);
+
+        var top = Arrays.copyOfRange(copy, firstIdx, copy.length);
+        introSort(top);
+
+        // Reversing into descending order
+        for (int i = 0, j = top.length - 1; i < j; i++, j--)
+            swap(top, i, j);
+
+        return top;
+    }
+
+    /*
+     * Moves the kth smallest element of data[start, end) to index k, partitioning the range around it.
+     * end is exclusive and start <= k < end
+     */
+    private static void select(int[] data, int start, int end, int k) {
+        int depthLimit = 2 * (31 - Integer.numberOfLeadingZeros(end - start));
+
+        while (end - start >= INTRO_SORT_INSERTION_CUTOFF) {
+            int pivotIdx;
+            if (depthLimit > 0) {
+                depthLimit--;
+                pivotIdx = end - start >= NINTHER_THRESHOLD
+                        ? ninther(data, start, end)
+                        : medianOf3(data, start, (start + end) >>> 1, end - 1);
+            }
+            else {
+                pivotIdx = medianOfMedians(data, start, end);
+            }
+
+            swap(data, pivotIdx, (start + end) >>> 1);
+            int divisionIdx = hoarePartition(data, start, end);
+
+            if (k < divisionIdx)
+                end = divisionIdx;
+            else
+                start = divisionIdx;
+        }
+
+        insertionSort(data, start, end);
+    }
+
+    /*
+     * Returns the index of an approximate median of data[start, end), found by taking the median of every
+     * group of 5 elements and then selecting the median of those. At least ~30% of the range is <= it and
+     * at least ~30% is >= it.
+     * The group medians are moved to the front of the range along the way
+     */
+    private static int medianOfMedians(int[] data, int start, int end) {
+        int groups = 0;
+        for (int groupStart = start; groupStart < end; groupStart += 5) {
+            int groupEnd = Math.min(groupStart + 5, end);
+            insertionSort(data, groupStart, groupEnd);
+            swap(data, start + groups, (groupStart + groupEnd - 1) >>> 1);
+            groups++;
+        }
+
+        int medianIdx = start + groups / 2;
+        select(data, start, start + groups, medianIdx);
+        return medianIdx;
+    }
+
+    /*
+     * VectorSortingAlgos.introSort and mergeSort, or null if they can't be used. VectorSortingAlgos is built from
+     * a separate source root (src-vector) and needs the jdk.incubator.vector module, so it's looked up reflectively:
+     * loading it fails when the class wasn't built or the JVM wasn't started with --add-modules jdk.incubator.vector
+     */
+    private static final MethodHandle VECTOR_INTRO_SORT = findVectorSort("introSort");
+    private static final MethodHandle VECTOR_MERGE_SORT = findVectorSort("mergeSort");
+
+    private static MethodHandle findVectorSort(String name) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return null;
+        try {
+            var vectorSorts = Class.forName("VectorSortingAlgos");
+            return MethodHandles.lookup().findStatic(vectorSorts, name, MethodType.methodType(void.class, int[].class));
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static void invokeVectorSort(MethodHandle sort, int[] data) {
+        try {
+            sort.invokeExact(data);
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            // The sorts don't throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
 
-        quickSortHoare(data, start, left);
-        quickSortHoare(data, left, end);
+    /*
+     * introSort with SIMD partitioning and sorting networks for small ranges (see VectorSortingAlgos).
+     * Falls back to introSort when VectorSortingAlgos wasn't built or the JVM wasn't started with
+     * --add-modules jdk.incubator.vector
+     */
+    public static void vectorizedIntroSort(int[] data) {
+        if (VECTOR_INTRO_SORT != null)
+            invokeVectorSort(VECTOR_INTRO_SORT, data);
+        else
+            introSort(data);
+    }
+
+    /*
+     * mergeSort with SIMD merging and sorting networks for small blocks (see VectorSortingAlgos).
+     * Falls back to mergeSort when VectorSortingAlgos wasn't built or the JVM wasn't started with
+     * --add-modules jdk.incubator.vector. This isn't an in-place implementation
+     */
+    public static void vectorizedMergeSort(int[] data) {
+        if (VECTOR_MERGE_SORT != null)
+            invokeVectorSort(VECTOR_MERGE_SORT, data);
+        else
+            mergeSort(data);
     }
 
     /*
@@ -138,68 +620,1062 @@ public class SortingAlgos {
         mergeSort(data, midIdx, end, tmp);
 
         // Merging stage
+        sequentialMerge(data, start, midIdx, midIdx, end, tmp, start);
+
+        // Copying tmp back into data
+        for (int i = start; i < end; i++) {
+            data[i] = tmp[i];
+        }
+    }
+
+    /*
+     * mergeSort in the order given by cmp. It's stable.
+     * This isn't an in-place implementation
+     */
+    public static void mergeSort(int[] data, IntComparator cmp) {
+        mergeSort(data, 0, data.length, new int[data.length], cmp);
+    }
+
+    private static void mergeSort(int[] data, int start, int end, int[] tmp, IntComparator cmp) {
+        if (end - start < INTRO_SORT_INSERTION_CUTOFF) {
+            insertionSort(data, start, end, cmp);
+            return;
+        }
+
+        int midIdx = (start + end) >>> 1;
+        mergeSort(data, start, midIdx, tmp, cmp);
+        mergeSort(data, midIdx, end, tmp, cmp);
+
+        // The halves are already in order
+        if (cmp.compare(data[midIdx - 1], data[midIdx]) <= 0) return;
+
+        // Merging stage: on ties the element from the left half goes first, which keeps the sort stable
         int left = start;
         int right = midIdx;
-
         int tmpIdx = start;
 
         while (left < midIdx || right < end) {
-            if (right == end || (left < midIdx && data[left] <= data[right])) {
-                tmp[tmpIdx] = data[left];
+            if (right == end || (left < midIdx && cmp.compare(data[left], data[right]) <= 0))
+                tmp[tmpIdx++] = data[left++];
+            else
+                tmp[tmpIdx++] = data[right++];
+        }
+
+        System.arraycopy(tmp, start, data, start, end - start);
+    }
+
+    /*
+     * Merges the sorted ranges src[leftStart, leftEnd) and src[rightStart, rightEnd) into dest starting at destStart.
+     * On ties the element from the left range goes first
+     */
+    static void sequentialMerge(int[] src, int leftStart, int leftEnd, int rightStart, int rightEnd,
+            int[] dest, int destStart) {
+        int left = leftStart;
+        int right = rightStart;
+
+        int destIdx = destStart;
+
+        while (left < leftEnd || right < rightEnd) {
+            if (right == rightEnd || (left < leftEnd && src[left] <= src[right])) {
+                dest[destIdx] = src[left];
                 left++;
             }
             else {
-                tmp[tmpIdx] = data[right];
+                dest[destIdx] = src[right];
                 right++;
             }
-            tmpIdx++;
+            destIdx++;
         }
+    }
 
-        // Copying tmp back into data
-        for (int i = start; i < end; i++) {
-            data[i] = tmp[i];
+    /*
+     * Returns the index of the first element in the sorted range data[start, end) that is >= val,
+     * or end if there's none
+     */
+    private static int lowerBound(int[] data, int start, int end, int val) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data[mid] < val)
+                low = mid + 1;
+            else
+                high = mid;
         }
+        return low;
     }
 
-    public static void countingSort(int[] data) {
-        // Represents the number of occurences of an element inside the array
-        var occurence = new HashMap<Integer, Integer>();
-        
-        int min = Integer.MAX_VALUE;
-        int max = Integer.MIN_VALUE;
-
-        // Building the occurence map
-        for (var e : data) {
-            if (occurence.containsKey(e))
-                occurence.replace(e, occurence.get(e) + 1);
+    /*
+     * Returns the index of the first element in the sorted range data[start, end) that is > val,
+     * or end if there's none
+     */
+    private static int upperBound(int[] data, int start, int end, int val) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data[mid] <= val)
+                low = mid + 1;
             else
-                occurence.put(e, 1);
-            
-            if (e < min)
-                min = e;
-            if (e > max)
-                max = e;
+                high = mid;
         }
+        return low;
+    }
 
-        /*
-         * Builds the sorted array:
-         * We're not gonna create a new array. Instead, we're gonna reuse the original array by
-         * replacing each element, say at index i, with the the ith in-the-sorted-order element.
-         */
+    /*
+     * Natural runs shorter than this are extended with insertion sort by naturalMergeSort
+     */
+    private static final int MIN_RUN = 32;
 
-        
-        int idx = 0;
-        for (int i = min; i <= max; i++) {
-            if (!occurence.containsKey(i))
-                continue;
-            
-            int count = occurence.get(i);
-            int j = 0;
-            while (j < count) {
-                data[idx] = i;
-                idx++;
-                j++;
-            }
-        }
+    /*
+     * How many elements in a row one run has to win during a merge before the merge switches to galloping
+     */
+    private static final int MIN_GALLOP = 7;
+
+    /*
+     * An adaptive merge sort that merges the runs already present in the data instead of splitting it blindly.
+     *
+     * Ascending runs are taken as they are, strictly descending runs are reversed, and short runs are
+     * extended to MIN_RUN with insertion sort. Neighbouring runs are then merged pairwise, level by level,
+     * bouncing between data and a single tmp buffer so nothing is copied back after each merge.
+     * The merges gallop (exponential search) through long stretches won by the same run.
+     *
+     * Sorted or reverse-sorted input is a single run and finishes in O(n); in general it's O(n log r) for r runs.
+     * This isn't an in-place implementation
+     */
+    public static void naturalMergeSort(int[] data) {
+        int n = data.length;
+        if (n < 2) return;
+
+        // Every run but the last is at least MIN_RUN long
+        var runEnds = new int[n / MIN_RUN + 1];
+        int runCount = 0;
+
+        int start = 0;
+        while (start < n) {
+            int end = findRunAndMakeAscending(data, start, n);
+            if (end - start < MIN_RUN) {
+                int forcedEnd = Math.min(start + MIN_RUN, n);
+                insertionSort(data, start, forcedEnd);
+                end = forcedEnd;
+            }
+            runEnds[runCount++] = end;
+            start = end;
+        }
+
+        if (runCount == 1) return;
+
+        var src = data;
+        var dest = new int[n];
+
+        while (runCount > 1) {
+            int mergedCount = 0;
+            int runStart = 0;
+
+            int r = 0;
+            for (; r + 1 < runCount; r += 2) {
+                int mid = runEnds[r];
+                int end = runEnds[r + 1];
+                gallopingMerge(src, runStart, mid, end, dest);
+                runEnds[mergedCount++] = end;
+                runStart = end;
+            }
+
+            // An odd run out still has to move over to the other buffer
+            if (r < runCount) {
+                System.arraycopy(src, runStart, dest, runStart, n - runStart);
+                runEnds[mergedCount++] = n;
+            }
+
+            runCount = mergedCount;
+            var dummy = src;
+            src = dest;
+            dest = dummy;
+        }
+
+        if (src != data)
+            System.arraycopy(src, 0, data, 0, n);
+    }
+
+    /*
+     * Returns the end (exclusive) of the run starting at data[start].
+     * A strictly descending run is reversed so that every returned run is ascending
+     */
+    private static int findRunAndMakeAscending(int[] data, int start, int end) {
+        int runEnd = start + 1;
+        if (runEnd == end) return end;
+
+        if (data[runEnd] < data[start]) {
+            runEnd++;
+            while (runEnd < end && data[runEnd] < data[runEnd - 1])
+                runEnd++;
+
+            // Reversing the descending run
+            for (int i = start, j = runEnd - 1; i < j; i++, j--)
+                swap(data, i, j);
+        }
+        else {
+            runEnd++;
+            while (runEnd < end && data[runEnd] >= data[runEnd - 1])
+                runEnd++;
+        }
+
+        return runEnd;
+    }
+
+    /*
+     * Merges the sorted ranges src[start, mid) and src[mid, end) into dest[start, end).
+     * On ties the element from the left range goes first.
+     *
+     * Once one range has won MIN_GALLOP times in a row, the merge gallops: it finds how far that range keeps
+     * winning with an exponential search and copies the whole stretch at once. It falls back to one-by-one
+     * merging when the stretches get short again
+     */
+    private static void gallopingMerge(int[] src, int start, int mid, int end, int[] dest) {
+        // The two runs are already in order
+        if (src[mid - 1] <= src[mid]) {
+            System.arraycopy(src, start, dest, start, end - start);
+            return;
+        }
+
+        int left = start;
+        int right = mid;
+        int destIdx = start;
+
+        int leftWins = 0;
+        int rightWins = 0;
+
+        while (left < mid && right < end) {
+            if (src[right] < src[left]) {
+                dest[destIdx++] = src[right++];
+                rightWins++;
+                leftWins = 0;
+            }
+            else {
+                dest[destIdx++] = src[left++];
+                leftWins++;
+                rightWins = 0;
+            }
+
+            if ((leftWins < MIN_GALLOP && rightWins < MIN_GALLOP) || left == mid || right == end)
+                continue;
+
+            // Galloping mode
+            int leftStretch;
+            int rightStretch;
+            do {
+                int leftStop = gallopUpper(src, left, mid, src[right]);
+                leftStretch = leftStop - left;
+                System.arraycopy(src, left, dest, destIdx, leftStretch);
+                destIdx += leftStretch;
+                left = leftStop;
+                if (left == mid) break;
+
+                // src[right] < src[left] at this point
+                dest[destIdx++] = src[right++];
+                if (right == end) break;
+
+                int rightStop = gallopLower(src, right, end, src[left]);
+                rightStretch = rightStop - right;
+                System.arraycopy(src, right, dest, destIdx, rightStretch);
+                destIdx += rightStretch;
+                right = rightStop;
+                if (right == end) break;
+
+                // src[left] <= src[right] at this point
+                dest[destIdx++] = src[left++];
+                if (left == mid) break;
+            } while (leftStretch >= MIN_GALLOP || rightStretch >= MIN_GALLOP);
+
+            leftWins = 0;
+            rightWins = 0;
+        }
+
+        // Only one of these copies anything
+        System.arraycopy(src, left, dest, destIdx, mid - left);
+        destIdx += mid - left;
+        System.arraycopy(src, right, dest, destIdx, end - right);
+    }
+
+    /*
+     * Returns the index of the first element in the sorted range src[start, end) that is > key.
+     * Probes positions start, start + 1, start + 3, start + 7, ... before binary searching, so it's
+     * O(log k) where k is the distance from start to the answer
+     */
+    private static int gallopUpper(int[] src, int start, int end, int key) {
+        int bound = 1;
+        while (start + bound < end && src[start + bound - 1] <= key)
+            bound <<= 1;
+
+        return upperBound(src, start + (bound >>> 1), Math.min(start + bound, end), key);
+    }
+
+    /*
+     * Returns the index of the first element in the sorted range src[start, end) that is >= key.
+     * Gallops from start like gallopUpper does
+     */
+    private static int gallopLower(int[] src, int start, int end, int key) {
+        int bound = 1;
+        while (start + bound < end && src[start + bound - 1] < key)
+            bound <<= 1;
+
+        return lowerBound(src, start + (bound >>> 1), Math.min(start + bound, end), key);
+    }
+
+    /*
+     * Ranges smaller than this are sorted sequentially by the parallel sorts; splitting them
+     * further costs more in task overhead than it gains
+     */
+    public static final int DEFAULT_PARALLEL_CUTOFF = 1 << 13;
+
+    /*
+     * A parallel version of mergeSort that runs on the common ForkJoinPool.
+     * Both the recursion and the merging stage run in parallel.
+     */
+    public static void parallelMergeSort(int[] data) {
+        parallelMergeSort(data, DEFAULT_PARALLEL_CUTOFF, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * cutoff: ranges with fewer elements than this are sorted with the sequential mergeSort
+     */
+    public static void parallelMergeSort(int[] data, int cutoff, ForkJoinPool pool) {
+        if (cutoff < 2)
+            throw new IllegalArgumentException("cutoff must be at least 2");
+        if (data.length < 2) return;
+
+        pool.invoke(new ParallelMergeSortTask(data, 0, data.length, new int[data.length], cutoff));
+    }
+
+    /*
+     * A parallel quicksort with hoare's partitioning scheme that runs on the common ForkJoinPool
+     */
+    public static void parallelQuickSort(int[] data) {
+        parallelQuickSort(data, DEFAULT_PARALLEL_CUTOFF, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * cutoff: ranges with fewer elements than this are sorted with the sequential introSort
+     */
+    public static void parallelQuickSort(int[] data, int cutoff, ForkJoinPool pool) {
+        if (cutoff < 2)
+            throw new IllegalArgumentException("cutoff must be at least 2");
+        if (data.length < 2) return;
+
+        int depthLimit = 2 * (31 - Integer.numberOfLeadingZeros(data.length));
+        pool.invoke(new ParallelQuickSortTask(data, 0, data.length, depthLimit, cutoff));
+    }
+
+    /*
+     * Sorts data[start, end) using tmp[start, end) as the merge buffer, exactly like mergeSort does
+     */
+    private static class ParallelMergeSortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] data;
+        private final int start;
+        private final int end;
+        private final int[] tmp;
+        private final int cutoff;
+
+        ParallelMergeSortTask(int[] data, int start, int end, int[] tmp, int cutoff) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.tmp = tmp;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start < cutoff) {
+                mergeSort(data, start, end, tmp);
+                return;
+            }
+
+            int midIdx = (start + end) >>> 1;
+            invokeAll(new ParallelMergeSortTask(data, start, midIdx, tmp, cutoff),
+                    new ParallelMergeSortTask(data, midIdx, end, tmp, cutoff));
+
+            // Both halves are sorted, merge them into tmp and copy tmp back into data
+            new ParallelMergeTask(data, start, midIdx, midIdx, end, tmp, start, cutoff).compute();
+            new ParallelCopyTask(tmp, data, start, end, cutoff).compute();
+        }
+    }
+
+    /*
+     * Merges the sorted ranges src[leftStart, leftEnd) and src[rightStart, rightEnd) into dest starting at destStart.
+     *
+     * The larger range is split at its middle element, and the smaller range is split at the position
+     * that element would be inserted at, so the two halves of the merge are independent of each other.
+     * Equal elements of the left range always end up before the ones of the right range, which keeps the merge stable.
+     */
+    private static class ParallelMergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src;
+        private final int leftStart;
+        private final int leftEnd;
+        private final int rightStart;
+        private final int rightEnd;
+        private final int[] dest;
+        private final int destStart;
+        private final int cutoff;
+
+        ParallelMergeTask(int[] src, int leftStart, int leftEnd, int rightStart, int rightEnd, int[] dest,
+                int destStart, int cutoff) {
+            this.src = src;
+            this.leftStart = leftStart;
+            this.leftEnd = leftEnd;
+            this.rightStart = rightStart;
+            this.rightEnd = rightEnd;
+            this.dest = dest;
+            this.destStart = destStart;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            int leftLen = leftEnd - leftStart;
+            int rightLen = rightEnd - rightStart;
+
+            if (leftLen + rightLen < cutoff) {
+                sequentialMerge(src, leftStart, leftEnd, rightStart, rightEnd, dest, destStart);
+                return;
+            }
+
+            int leftMid;
+            int rightMid;
+            int splitVal;
+            if (leftLen >= rightLen) {
+                leftMid = (leftStart + leftEnd) >>> 1;
+                splitVal = src[leftMid];
+                // First element of the right range that is >= splitVal
+                rightMid = lowerBound(src, rightStart, rightEnd, splitVal);
+            }
+            else {
+                rightMid = (rightStart + rightEnd) >>> 1;
+                splitVal = src[rightMid];
+                // First element of the left range that is > splitVal
+                leftMid = upperBound(src, leftStart, leftEnd, splitVal);
+            }
+
+            // The split element goes straight into its final slot, so both halves below are strictly smaller than this merge
+            int destMid = destStart + (leftMid - leftStart) + (rightMid - rightStart);
+            dest[destMid] = splitVal;
+
+            var lower = new ParallelMergeTask(src, leftStart, leftMid, rightStart, rightMid, dest, destStart, cutoff);
+            var upper = leftLen >= rightLen
+                    ? new ParallelMergeTask(src, leftMid + 1, leftEnd, rightMid, rightEnd, dest, destMid + 1, cutoff)
+                    : new ParallelMergeTask(src, leftMid, leftEnd, rightMid + 1, rightEnd, dest, destMid + 1, cutoff);
+            invokeAll(lower, upper);
+        }
+    }
+
+    /*
+     * Copies src[start, end) into dest[start, end) in parallel
+     */
+    private static class ParallelCopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src;
+        private final int[] dest;
+        private final int start;
+        private final int end;
+        private final int cutoff;
+
+        ParallelCopyTask(int[] src, int[] dest, int start, int end, int cutoff) {
+            this.src = src;
+            this.dest = dest;
+            this.start = start;
+            this.end = end;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start < cutoff) {
+                System.arraycopy(src, start, dest, start, end - start);
+                return;
+            }
+
+            int midIdx = (start + end) >>> 1;
+            invokeAll(new ParallelCopyTask(src, dest, start, midIdx, cutoff),
+                    new ParallelCopyTask(src, dest, midIdx, end, cutoff));
+        }
+    }
+
+    /*
+     * Sorts data[start, end) by partitioning it with hoare's scheme and sorting both sides in parallel.
+     * Pivots are picked like introSort picks them, and a range that runs out of depthLimit is handed
+     * to the sequential introSort, which falls back to heapsort, so inputs like organ pipes can't
+     * make it quadratic or overflow the stack
+     */
+    private static class ParallelQuickSortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] data;
+        private final int start;
+        private final int end;
+        private final int depthLimit;
+        private final int cutoff;
+
+        ParallelQuickSortTask(int[] data, int start, int end, int depthLimit, int cutoff) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.depthLimit = depthLimit;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start < cutoff || depthLimit == 0) {
+                introSort(data, start, end, depthLimit, false);
+                return;
+            }
+
+            int pivotIdx = end - start >= NINTHER_THRESHOLD
+                    ? ninther(data, start, end)
+                    : medianOf3(data, start, (start + end) >>> 1, end - 1);
+            swap(data, pivotIdx, (start + end) >>> 1);
+
+            int divisionIdx = hoarePartition(data, start, end);
+            invokeAll(new ParallelQuickSortTask(data, start, divisionIdx, depthLimit - 1, cutoff),
+                    new ParallelQuickSortTask(data, divisionIdx, end, depthLimit - 1, cutoff));
+        }
+    }
+
+    /*
+     * countingSort only builds a histogram when the range of values (max - min + 1) is at most
+     * this many times the number of elements; wider ranges are handed over to lsdRadixSort
+     */
+    public static final int COUNTING_SORT_MAX_RANGE_FACTOR = 4;
+
+    /*
+     * Ranges this small are always counted, no matter how few elements there are
+     */
+    private static final int COUNTING_SORT_MIN_RANGE = 1 << 16;
+
+    /*
+     * Ranges wider than this are never counted, however many elements there are: the histogram would take
+     * more than 256MB, and past Integer.MAX_VALUE it couldn't be allocated at all
+     */
+    private static final int COUNTING_SORT_MAX_RANGE = 1 << 26;
+
+    public static void countingSort(int[] data) {
+        if (data.length < 2) return;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        for (var e : data) {
+            if (e < min)
+                min = e;
+            if (e > max)
+                max = e;
+        }
+
+        // A long, since max - min overflows an int when the values span more than half the int range
+        long range = (long) max - min + 1;
+        if (range > COUNTING_SORT_MAX_RANGE
+                || range > Math.max(COUNTING_SORT_MIN_RANGE, (long) data.length * COUNTING_SORT_MAX_RANGE_FACTOR)) {
+            lsdRadixSort(data);
+            return;
+        }
+
+        // Represents the number of occurences of each element, shifted by min
+        var occurence = new int[(int) range];
+        for (var e : data)
+            occurence[e - min]++;
+
+        /*
+         * Builds the sorted array:
+         * We're not gonna create a new array. Instead, we're gonna reuse the original array by
+         * replacing each element, say at index i, with the the ith in-the-sorted-order element.
+         */
+        int idx = 0;
+        for (int i = 0; i < occurence.length; i++) {
+            int val = min + i;
+            for (int count = occurence[i]; count > 0; count--) {
+                data[idx] = val;
+                idx++;
+            }
+        }
+    }
+
+    /*
+     * An implementation of LSD radix sort using 8-bit digits
+     */
+    public static void lsdRadixSort(int[] data) {
+        lsdRadixSort(data, 8);
+    }
+
+    /*
+     * An implementation of LSD radix sort.
+     * - digitBits: the width of each digit, one of 8, 11 or 16. That's 4, 3 or 2 counting passes
+     *              over the array with a histogram of 256, 2048 or 65536 counters.
+     *
+     * Negative numbers are handled by flipping the sign bit, which makes the signed order
+     * of the ints match the unsigned order of their bit patterns.
+     * This isn't an in-place implementation
+     */
+    public static void lsdRadixSort(int[] data, int digitBits) {
+        lsdRadixSort(data, null, digitBits);
+    }
+
+    /*
+     * Sorts keys and moves every payload element along with its key, so payload[i] still belongs to keys[i]
+     * afterwards. The sort is stable: payload elements with equal keys keep their relative order.
+     * keys and payload must have the same length
+     */
+    public static void sortWithPayload(int[] keys, int[] payload) {
+        if (keys.length != payload.length)
+            throw new IllegalArgumentException("keys and payload must have the same length");
+
+        lsdRadixSort(keys, payload, 11);
+    }
+
+    /*
+     * payload is moved along with data, unless it's null
+     */
+    private static void lsdRadixSort(int[] data, int[] payload, int digitBits) {
+        if (digitBits != 8 && digitBits != 11 && digitBits != 16)
+            throw new IllegalArgumentException("digitBits must be 8, 11 or 16");
+        if (data.length < 2) return;
+
+        int radix = 1 << digitBits;
+        int mask = radix - 1;
+        int passes = (Integer.SIZE + digitBits - 1) / digitBits;
+
+        // Building the histograms of all the digits in a single pass over the data
+        var counts = new int[passes][radix];
+        for (var e : data) {
+            int key = e ^ Integer.MIN_VALUE;
+            for (int p = 0; p < passes; p++)
+                counts[p][(key >>> (p * digitBits)) & mask]++;
+        }
+
+        var src = data;
+        var dest = new int[data.length];
+        var payloadSrc = payload;
+        var payloadDest = payload == null ? null : new int[payload.length];
+
+        for (int p = 0; p < passes; p++) {
+            var count = counts[p];
+            int shift = p * digitBits;
+
+            // Every element has the same digit here, so this pass wouldn't move anything
+            if (count[((src[0] ^ Integer.MIN_VALUE) >>> shift) & mask] == src.length)
+                continue;
+
+            // Turning the counts into the starting positions of each digit
+            int sum = 0;
+            for (int d = 0; d < radix; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+
+            if (payload == null) {
+                for (var e : src) {
+                    int digit = ((e ^ Integer.MIN_VALUE) >>> shift) & mask;
+                    dest[count[digit]++] = e;
+                }
+            }
+            else {
+                for (int i = 0; i < src.length; i++) {
+                    int digit = ((src[i] ^ Integer.MIN_VALUE) >>> shift) & mask;
+                    int destIdx = count[digit]++;
+                    dest[destIdx] = src[i];
+                    payloadDest[destIdx] = payloadSrc[i];
+                }
+
+                var dummy = payloadSrc;
+                payloadSrc = payloadDest;
+                payloadDest = dummy;
+            }
+
+            var dummy = src;
+            src = dest;
+            dest = dummy;
+        }
+
+        // After an odd number of effective passes the sorted data is sitting in the scratch array
+        if (src != data) {
+            System.arraycopy(src, 0, data, 0, data.length);
+            if (payload != null)
+                System.arraycopy(payloadSrc, 0, payload, 0, payload.length);
+        }
+    }
+
+    /*
+     * Ranges smaller than this are left to insertion sort by msdRadixSort
+     */
+    private static final int MSD_RADIX_INSERTION_CUTOFF = 32;
+
+    /*
+     * An in-place implementation of MSD radix sort (American flag sort) using 8-bit digits.
+     * Each pass permutes the elements into their digit buckets by following swap cycles,
+     * then every bucket is sorted recursively on the next digit.
+     * This isn't a stable sort
+     */
+    public static void msdRadixSort(int[] data) {
+        msdRadixSort(data, 0, data.length, Integer.SIZE - 8, new int[256], new int[256], new int[Integer.SIZE / 8][256]);
+    }
+
+    /*
+     * end is exclusive.
+     * count and next are scratch arrays shared by the whole recursion; each call finishes with them
+     * before recursing so they're safe to reuse. bucketEnds holds one row per digit level, since a
+     * call still needs its own row after its children return
+     */
+    private static void msdRadixSort(int[] data, int start, int end, int shift, int[] count, int[] next,
+            int[][] bucketEndsPerLevel) {
+        if (end - start < MSD_RADIX_INSERTION_CUTOFF) {
+            insertionSort(data, start, end);
+            return;
+        }
+
+        Arrays.fill(count, 0);
+        for (int i = start; i < end; i++)
+            count[((data[i] ^ Integer.MIN_VALUE) >>> shift) & 0xFF]++;
+
+        // bucketEnds[d] is where bucket d stops, next[d] is the next slot of bucket d to fill
+        var bucketEnds = bucketEndsPerLevel[shift / 8];
+        int sum = start;
+        for (int d = 0; d < 256; d++) {
+            next[d] = sum;
+            sum += count[d];
+            bucketEnds[d] = sum;
+        }
+
+        // Following the swap cycles: every swap puts one element into its bucket for good
+        for (int d = 0; d < 256; d++) {
+            while (next[d] < bucketEnds[d]) {
+                int e = data[next[d]];
+                int digit = ((e ^ Integer.MIN_VALUE) >>> shift) & 0xFF;
+                while (digit != d) {
+                    var dummy = data[next[digit]];
+                    data[next[digit]++] = e;
+                    e = dummy;
+                    digit = ((e ^ Integer.MIN_VALUE) >>> shift) & 0xFF;
+                }
+                data[next[d]++] = e;
+            }
+        }
+
+        if (shift == 0) return;
+
+        int bucketStart = start;
+        for (int d = 0; d < 256; d++) {
+            if (bucketEnds[d] - bucketStart > 1)
+                msdRadixSort(data, bucketStart, bucketEnds[d], shift - 8, count, next, bucketEndsPerLevel);
+            bucketStart = bucketEnds[d];
+        }
+    }
+
+    // ---------------- long, float AND double ----------------
+
+    /*
+     * introSort for long[]: median-of-3/ninther pivot, hoare's partitioning scheme, insertion sort for small ranges
+     * and heapsort once the recursion gets deeper than 2 * log2(n)
+     */
+    public static void introSort(long[] data) {
+        if (data.length < 2) return;
+
+        introSort(data, 0, data.length, 2 * (31 - Integer.numberOfLeadingZeros(data.length)));
+    }
+
+    /*
+     * Sorts data in the order of Float.compare: -0.0f comes before 0.0f, and NaNs come after everything else.
+     * The floats are mapped to ints with the same order (see sortableBits), sorted as ints, and mapped back,
+     * so this takes an extra int[] of the same length. NaNs come out as the canonical Float.NaN
+     */
+    public static void introSort(float[] data) {
+        var keys = toSortableBits(data);
+        introSort(keys);
+        fromSortableBits(keys, data);
+    }
+
+    /*
+     * Sorts data in the order of Double.compare, like introSort(float[]) does. Takes an extra long[] of the same length
+     */
+    public static void introSort(double[] data) {
+        var keys = toSortableBits(data);
+        introSort(keys);
+        fromSortableBits(keys, data);
+    }
+
+    /*
+     * LSD radix sort for long[] using 11-bit digits
+     */
+    public static void lsdRadixSort(long[] data) {
+        lsdRadixSort(data, 11);
+    }
+
+    /*
+     * LSD radix sort for long[].
+     * - digitBits: the width of each digit, one of 8, 11 or 16. That's 8, 6 or 4 counting passes.
+     *
+     * Negative numbers are handled by flipping the sign bit, like lsdRadixSort(int[], int) does.
+     * This isn't an in-place implementation
+     */
+    public static void lsdRadixSort(long[] data, int digitBits) {
+        if (digitBits != 8 && digitBits != 11 && digitBits != 16)
+            throw new IllegalArgumentException("digitBits must be 8, 11 or 16");
+        if (data.length < 2) return;
+
+        int radix = 1 << digitBits;
+        int mask = radix - 1;
+        int passes = (Long.SIZE + digitBits - 1) / digitBits;
+
+        var counts = new int[passes][radix];
+        for (var e : data) {
+            long key = e ^ Long.MIN_VALUE;
+            for (int p = 0; p < passes; p++)
+                counts[p][(int) (key >>> (p * digitBits)) & mask]++;
+        }
+
+        var src = data;
+        var dest = new long[data.length];
+
+        for (int p = 0; p < passes; p++) {
+            var count = counts[p];
+            int shift = p * digitBits;
+
+            if (count[(int) ((src[0] ^ Long.MIN_VALUE) >>> shift) & mask] == src.length)
+                continue;
+
+            int sum = 0;
+            for (int d = 0; d < radix; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+
+            for (var e : src) {
+                int digit = (int) ((e ^ Long.MIN_VALUE) >>> shift) & mask;
+                dest[count[digit]++] = e;
+            }
+
+            var dummy = src;
+            src = dest;
+            dest = dummy;
+        }
+
+        if (src != data)
+            System.arraycopy(src, 0, data, 0, data.length);
+    }
+
+    /*
+     * LSD radix sort for float[], in the order of Float.compare. Works on sortable int keys like introSort(float[])
+     */
+    public static void lsdRadixSort(float[] data) {
+        var keys = toSortableBits(data);
+        lsdRadixSort(keys);
+        fromSortableBits(keys, data);
+    }
+
+    /*
+     * LSD radix sort for double[], in the order of Double.compare. Works on sortable long keys like introSort(double[])
+     */
+    public static void lsdRadixSort(double[] data) {
+        var keys = toSortableBits(data);
+        lsdRadixSort(keys);
+        fromSortableBits(keys, data);
+    }
+
+    /*
+     * Returns the permutation that sorts keys: keys[perm[0]] <= keys[perm[1]] <= ...
+     * It's stable, so equal keys keep the order of their indexes. keys isn't modified.
+     *
+     * Every (key, index) pair is packed into a single long, key in the high half, so sorting the longs
+     * sorts by key first and index second
+     */
+    public static int[] argsort(int[] keys) {
+        var packed = new long[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            packed[i] = ((long) keys[i] << 32) | i;
+
+        lsdRadixSort(packed);
+
+        var perm = new int[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            perm[i] = (int) packed[i];
+        return perm;
+    }
+
+    /*
+     * Maps a float to an int such that comparing the ints as signed ints gives the order of Float.compare.
+     * Positive floats already compare correctly by their bits; negative ones have every bit but the sign flipped,
+     * which reverses their order. Float.floatToIntBits turns every NaN into the canonical one, which lands after +infinity
+     */
+    private static int sortableBits(float val) {
+        int bits = Float.floatToIntBits(val);
+        return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+    }
+
+    /*
+     * The inverse of sortableBits(float). Flipping the same bits again undoes it since the sign bit is untouched
+     */
+    private static float floatFromSortableBits(int key) {
+        return Float.intBitsToFloat(key ^ ((key >> 31) & Integer.MAX_VALUE));
+    }
+
+    /*
+     * The double version of sortableBits(float)
+     */
+    private static long sortableBits(double val) {
+        long bits = Double.doubleToLongBits(val);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static double doubleFromSortableBits(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    private static int[] toSortableBits(float[] data) {
+        var keys = new int[data.length];
+        for (int i = 0; i < data.length; i++)
+            keys[i] = sortableBits(data[i]);
+        return keys;
+    }
+
+    private static void fromSortableBits(int[] keys, float[] data) {
+        for (int i = 0; i < data.length; i++)
+            data[i] = floatFromSortableBits(keys[i]);
+    }
+
+    private static long[] toSortableBits(double[] data) {
+        var keys = new long[data.length];
+        for (int i = 0; i < data.length; i++)
+            keys[i] = sortableBits(data[i]);
+        return keys;
+    }
+
+    private static void fromSortableBits(long[] keys, double[] data) {
+        for (int i = 0; i < data.length; i++)
+            data[i] = doubleFromSortableBits(keys[i]);
+    }
+
+    /*
+     * end is exclusive. Recurses into the smaller side and loops on the larger one
+     */
+    private static void introSort(long[] data, int start, int end, int depthLimit) {
+        while (end - start >= INTRO_SORT_INSERTION_CUTOFF) {
+            if (depthLimit == 0) {
+                heapSort(data, start, end);
+                return;
+            }
+            depthLimit--;
+
+            int pivotIdx = end - start >= NINTHER_THRESHOLD
+                    ? ninther(data, start, end)
+                    : medianOf3(data, start, (start + end) >>> 1, end - 1);
+
+            int midIdx = (start + end) >>> 1;
+            swap(data, pivotIdx, midIdx);
+            int divisionIdx = hoarePartition(data, start, end);
+
+            if (divisionIdx - start < end - divisionIdx) {
+                introSort(data, start, divisionIdx, depthLimit);
+                start = divisionIdx;
+            }
+            else {
+                introSort(data, divisionIdx, end, depthLimit);
+                end = divisionIdx;
+            }
+        }
+
+        insertionSort(data, start, end);
+    }
+
+    private static int hoarePartition(long[] data, int start, int end) {
+        long pivotVal = data[(start + end) >>> 1];
+
+        int left = start - 1;
+        int right = end;
+
+        while (true) {
+            do left++;
+            while (data[left] < pivotVal);
+
+            do right--;
+            while (data[right] > pivotVal);
+
+            if (left >= right) return left;
+
+            swap(data, left, right);
+        }
+    }
+
+    private static int medianOf3(long[] data, int a, int b, int c) {
+        if (data[a] < data[b]) {
+            if (data[b] < data[c]) return b;
+            return data[a] < data[c] ? c : a;
+        }
+        if (data[a] < data[c]) return a;
+        return data[b] < data[c] ? c : b;
+    }
+
+    private static int ninther(long[] data, int start, int end) {
+        int step = (end - start) / 8;
+        int mid = (start + end) >>> 1;
+        int last = end - 1;
+
+        int m1 = medianOf3(data, start, start + step, start + 2 * step);
+        int m2 = medianOf3(data, mid - step, mid, mid + step);
+        int m3 = medianOf3(data, last - 2 * step, last - step, last);
+
+        return medianOf3(data, m1, m2, m3);
+    }
+
+    private static void insertionSort(long[] data, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            var val = data[i];
+            var left = i - 1;
+
+            while (left >= start && data[left] > val) {
+                data[left + 1] = data[left];
+                left--;
+            }
+            data[left + 1] = val;
+        }
+    }
+
+    private static void heapSort(long[] data, int start, int end) {
+        int size = end - start;
+
+        for (int i = size / 2 - 1; i >= 0; i--)
+            siftDown(data, start, i, size);
+
+        for (int last = size - 1; last > 0; last--) {
+            swap(data, start, start + last);
+            siftDown(data, start, 0, last);
+        }
+    }
+
+    private static void siftDown(long[] data, int offset, int i, int size) {
+        long val = data[offset + i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && data[offset + child + 1] > data[offset + child])
+                child++;
+            if (data[offset + child] <= val) break;
+
+            data[offset + i] = data[offset + child];
+            i = child;
+        }
+
+        data[offset + i] = val;
+    }
+
+    private static void swap(long[] data, int i, int j) {
+        var dummy = data[i];
+        data[i] = data[j];
+        data[j] = dummy;
     }
 }
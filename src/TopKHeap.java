@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/*
+ * Keeps the k largest values (or the k smallest) seen in a stream, in O(k) memory.
+ *
+ * The values are kept in a BinaryHeap of capacity k ordered the other way around: a min heap when keeping
+ * the largest values. Its root is the worst value kept so far, so a new value either loses to the root and is
+ * dropped after a single comparison, or replaces the root with one heapify down, O(log k).
+ * Once the heap is full most values of a long stream are dropped at that first comparison.
+ */
+public class TopKHeap {
+    private final int k;
+    private final boolean keepSmallest;
+    private final BinaryHeap heap;
+
+    /*
+     * Keeps the k largest values
+     */
+    public TopKHeap(int k) {
+        this(k, false);
+    }
+
+    /*
+     * - keepSmallest: keep the k smallest values instead
+     */
+    public TopKHeap(int k, boolean keepSmallest) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+
+        this.k = k;
+        this.keepSmallest = keepSmallest;
+        this.heap = new BinaryHeap(k, 4, !keepSmallest);
+    }
+
+    /*
+     * Offers a value. Returns whether it's now among the values kept
+     */
+    public boolean offer(int val) {
+        if (heap.size() < k) {
+            heap.insert(val);
+            return true;
+        }
+
+        if (!beats(val, heap.peek())) return false;
+
+        heap.replaceTop(val);
+        return true;
+    }
+
+    /*
+     * Offers every value of values
+     */
+    public void offerAll(int[] values) {
+        int i = 0;
+        while (i < values.length && heap.size() < k)
+            heap.insert(values[i++]);
+        if (i == values.length) return;
+
+        // The worst value kept so far, kept in a local so most values are rejected without touching the heap
+        int threshold = heap.peek();
+        for (; i < values.length; i++) {
+            if (beats(values[i], threshold)) {
+                heap.replaceTop(values[i]);
+                threshold = heap.peek();
+            }
+        }
+    }
+
+    /*
+     * The number of values kept, which is k once at least k values have been offered
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    /*
+     * The worst of the values kept, i.e. what a new value has to beat once the heap is full
+     */
+    public int threshold() {
+        return heap.peek();
+    }
+
+    /*
+     * Returns the values kept, best first: largest to smallest, or smallest to largest with keepSmallest.
+     * The heap isn't modified
+     */
+    public int[] snapshotSorted() {
+        var values = heap.bfs();
+        Arrays.sort(values);
+
+        if (!keepSmallest) {
+            for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+                var dummy = values[i];
+                values[i] = values[j];
+                values[j] = dummy;
+            }
+        }
+        return values;
+    }
+
+    // ---------------- HELPER METHODS ----------------
+
+    /*
+     * Whether val should be kept over current
+     */
+    private boolean beats(int val, int current) {
+        return keepSmallest ? val < current : val > current;
+    }
+}